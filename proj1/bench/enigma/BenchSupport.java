@@ -0,0 +1,179 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Generated alphabets, rotors, machines, configuration files and message
+ *  corpora for the benchmarks.  Everything is derived from a fixed seed,
+ *  so every run measures the same work.
+ *  @author Daniel del Carpio
+ */
+final class BenchSupport {
+
+    /** Not instantiable. */
+    private BenchSupport() {
+    }
+
+    /** Seed for all generated data. */
+    static final long SEED = 61;
+
+    /** Return an alphabet of SIZE distinct characters.  Sizes up to 26 use
+     *  upper-case letters; larger ones continue into other characters. */
+    static Alphabet alphabet(int size) {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            chars.append(i < 26 ? (char) ('A' + i) : (char) (0x100 + i));
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /** Return the cycle notation of a random permutation of ALPHA drawn
+     *  from RANDOM.  If INVOLUTION, the permutation consists of 2-cycles
+     *  only, as for a reflector (ALPHA must then have even size). */
+    static String cycles(Alphabet alpha, Random random, boolean involution) {
+        int n = alpha.size();
+        int[] order = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            order[i] = i;
+        }
+        for (int i = n - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < n) {
+            int len = involution ? 2 : 1 + random.nextInt(n - i);
+            result.append('(');
+            for (int k = 0; k < len; k += 1) {
+                result.append(alpha.toChar(order[i + k]));
+            }
+            result.append(") ");
+            i += len;
+        }
+        return result.toString().trim();
+    }
+
+    /** Return ROTORS moving rotors named R0, R1, ..., each with one notch,
+     *  preceded by a reflector named B, all over ALPHA. */
+    static ArrayList<Rotor> rotors(Alphabet alpha, int rotors) {
+        Random random = new Random(SEED);
+        ArrayList<Rotor> result = new ArrayList<>();
+        result.add(new Reflector("B", new Permutation(
+            cycles(alpha, random, true), alpha)));
+        for (int i = 0; i < rotors; i += 1) {
+            String notch =
+                String.valueOf(alpha.toChar(random.nextInt(alpha.size())));
+            result.add(new MovingRotor("R" + i, new Permutation(
+                cycles(alpha, random, false), alpha), notch));
+        }
+        return result;
+    }
+
+    /** Return a machine over an alphabet of ALPHABETSIZE characters with a
+     *  reflector and ROTORS moving rotors, set up at setting 0 with a
+     *  plugboard swapping the first few pairs of characters. */
+    static Machine machine(int alphabetSize, int rotors, boolean compiled) {
+        Alphabet alpha = alphabet(alphabetSize);
+        Machine result =
+            new Machine(alpha, rotors + 1, rotors, rotors(alpha, rotors));
+        String[] names = new String[rotors + 1];
+        names[0] = "B";
+        for (int i = 1; i <= rotors; i += 1) {
+            names[i] = "R" + (i - 1);
+        }
+        result.insertRotors(names);
+        StringBuilder setting = new StringBuilder();
+        for (int i = 0; i < rotors; i += 1) {
+            setting.append(alpha.toChar(0));
+        }
+        result.setRotors(setting.toString());
+        StringBuilder plugs = new StringBuilder();
+        for (int i = 0; i + 1 < Math.min(alpha.size(), 20); i += 2) {
+            plugs.append('(').append(alpha.toChar(i))
+                .append(alpha.toChar(i + 1)).append(')');
+        }
+        result.setPlugboard(new Permutation(plugs.toString(), alpha));
+        result.setCompiled(compiled);
+        return result;
+    }
+
+    /** Return SIZE random alphabet indices for an alphabet of ALPHABETSIZE
+     *  characters. */
+    static int[] indices(int alphabetSize, int size) {
+        Random random = new Random(SEED);
+        int[] result = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            result[i] = random.nextInt(alphabetSize);
+        }
+        return result;
+    }
+
+    /** Return a message of SIZE characters over ALPHA, with a blank
+     *  roughly every six characters. */
+    static String message(Alphabet alpha, int size) {
+        Random random = new Random(SEED);
+        StringBuilder result = new StringBuilder(size);
+        for (int i = 0; i < size; i += 1) {
+            result.append(random.nextInt(6) == 0
+                          ? ' ' : alpha.toChar(random.nextInt(alpha.size())));
+        }
+        return result.toString();
+    }
+
+    /** Write a configuration file for Main to FILE describing a reflector
+     *  and ROTORS moving rotors over the upper-case alphabet, and return
+     *  the settings line that uses all of them. */
+    static String writeConfig(Path file, int rotors) throws IOException {
+        Alphabet alpha = alphabet(26);
+        Random random = new Random(SEED);
+        StringBuilder settings = new StringBuilder("* B");
+        try (Writer out = Files.newBufferedWriter(file,
+                                                  StandardCharsets.UTF_8)) {
+            out.write("ABCDEFGHIJKLMNOPQRSTUVWXYZ\n");
+            out.write((rotors + 1) + " " + rotors + "\n");
+            out.write("B R " + cycles(alpha, random, true) + "\n");
+            for (int i = 0; i < rotors; i += 1) {
+                char notch = alpha.toChar(random.nextInt(26));
+                out.write("R" + i + " M" + notch + " "
+                          + cycles(alpha, random, false) + "\n");
+                settings.append(" R").append(i);
+            }
+        }
+        settings.append(' ');
+        for (int i = 0; i < rotors; i += 1) {
+            settings.append('A');
+        }
+        return settings.append(" (AB) (CD) (EF)").toString();
+    }
+
+    /** Write an input file for Main to FILE holding the settings line
+     *  SETTINGS followed by SIZE bytes of message text in lines of about
+     *  80 characters. */
+    static void writeInput(Path file, String settings, long size)
+        throws IOException {
+        Random random = new Random(SEED);
+        try (Writer out = Files.newBufferedWriter(file,
+                                                  StandardCharsets.US_ASCII)) {
+            out.write(settings);
+            out.write('\n');
+            char[] line = new char[80];
+            for (long written = 0; written < size; written += line.length) {
+                int len = (int) Math.min(line.length, size - written);
+                for (int i = 0; i < len - 1; i += 1) {
+                    line[i] = random.nextInt(6) == 0
+                        ? ' ' : (char) ('a' + random.nextInt(26));
+                }
+                line[len - 1] = '\n';
+                out.write(line, 0, len);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Throughput of Machine.convert(int) and Machine.convert(String), in
+ *  characters per second, for machines with various numbers of rotors and
+ *  alphabet sizes, in both interpreted and compiled mode.
+ *  @author Daniel del Carpio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBenchmark {
+
+    /** Number of characters converted by each benchmark invocation. */
+    static final int BATCH = 4096;
+
+    /** Size of the machine's alphabet. */
+    @Param({"26", "64", "256"})
+    public int alphabetSize;
+
+    /** Number of moving rotors, not counting the reflector. */
+    @Param({"3", "5", "8"})
+    public int rotors;
+
+    /** Whether the machine runs in compiled mode. */
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    /** Machine under test. */
+    private Machine _machine;
+
+    /** Indices to convert. */
+    private int[] _input;
+
+    /** Message to convert, with blanks. */
+    private String _message;
+
+    /** Build the machine and its input. */
+    @Setup
+    public void setUp() {
+        _machine = BenchSupport.machine(alphabetSize, rotors, compiled);
+        _input = BenchSupport.indices(alphabetSize, BATCH);
+        _message = BenchSupport.message(BenchSupport.alphabet(alphabetSize),
+                                        BATCH);
+    }
+
+    /** Convert a batch of indices one call at a time. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int convertInt() {
+        int sum = 0;
+        for (int c : _input) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** Convert a batch of characters as one String. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+}
@@ -0,0 +1,97 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** End-to-end throughput of enigma.Main on generated corpora of 1 KB, 1 MB
+ *  and 100 MB, reading and writing real files.  Besides runs per second,
+ *  JMH reports the "chars" counter, which is input characters per second.
+ *  @author Daniel del Carpio
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MainBenchmark {
+
+    /** Size in bytes of the message text in the input file. */
+    @Param({"1024", "1048576", "104857600"})
+    public long corpusSize;
+
+    /** Number of moving rotors, not counting the reflector. */
+    @Param({"3", "5", "8"})
+    public int rotors;
+
+    /** Extra command-line option for Main, or "none". */
+    @Param({"none", "--mmap"})
+    public String mode;
+
+    /** Per-thread count of input characters processed. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Chars {
+        /** Input characters processed so far. */
+        public long chars;
+    }
+
+    /** Directory holding the generated files. */
+    private Path _dir;
+
+    /** Arguments to Main. */
+    private String[] _args;
+
+    /** Generate the configuration and input files. */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("enigma-bench");
+        Path config = _dir.resolve("bench.conf");
+        Path input = _dir.resolve("input.txt");
+        Path output = _dir.resolve("output.txt");
+        String settings = BenchSupport.writeConfig(config, rotors);
+        BenchSupport.writeInput(input, settings, corpusSize);
+        String[] files = { config.toString(), input.toString(),
+                           output.toString() };
+        if (mode.equals("none")) {
+            _args = files;
+        } else {
+            _args = new String[] { mode, files[0], files[1], files[2] };
+        }
+    }
+
+    /** Remove the generated files. */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (String name : new String[] {"bench.conf", "input.txt",
+                                         "output.txt"}) {
+            Files.deleteIfExists(_dir.resolve(name));
+        }
+        Files.deleteIfExists(_dir);
+    }
+
+    /** Run Main once over the whole input, counting its characters in
+     *  CHARS. */
+    @Benchmark
+    public void main(Chars chars) {
+        Main.main(_args);
+        chars.chars += corpusSize;
+    }
+}
@@ -0,0 +1,104 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Throughput of Permutation.permute and Permutation.invert, in
+ *  characters per second.
+ *  @author Daniel del Carpio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBenchmark {
+
+    /** Number of characters converted by each benchmark invocation. */
+    static final int BATCH = 4096;
+
+    /** Size of the permuted alphabet. */
+    @Param({"26", "64", "256"})
+    public int alphabetSize;
+
+    /** Permutation under test. */
+    private Permutation _perm;
+
+    /** Indices to convert. */
+    private int[] _input;
+
+    /** Characters to convert. */
+    private char[] _chars;
+
+    /** Build the permutation and its input. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = BenchSupport.alphabet(alphabetSize);
+        _perm = new Permutation(
+            BenchSupport.cycles(alpha, new Random(BenchSupport.SEED), false),
+            alpha);
+        _input = BenchSupport.indices(alphabetSize, BATCH);
+        _chars = new char[BATCH];
+        for (int i = 0; i < BATCH; i += 1) {
+            _chars[i] = alpha.toChar(_input[i]);
+        }
+    }
+
+    /** Apply permute(int) to a batch of indices. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int permuteInt() {
+        int sum = 0;
+        for (int p : _input) {
+            sum += _perm.permute(p);
+        }
+        return sum;
+    }
+
+    /** Apply invert(int) to a batch of indices. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int invertInt() {
+        int sum = 0;
+        for (int c : _input) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+
+    /** Apply permute(char) to a batch of characters. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int permuteChar() {
+        int sum = 0;
+        for (char p : _chars) {
+            sum += _perm.permute(p);
+        }
+        return sum;
+    }
+
+    /** Apply invert(char) to a batch of characters. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int invertChar() {
+        int sum = 0;
+        for (char c : _chars) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+}
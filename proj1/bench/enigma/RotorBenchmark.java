@@ -0,0 +1,78 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Throughput of Rotor.convertForward and Rotor.convertBackward, in
+ *  characters per second.  The rotor advances once per character, as it
+ *  would as the rightmost rotor of a machine.
+ *  @author Daniel del Carpio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotorBenchmark {
+
+    /** Number of characters converted by each benchmark invocation. */
+    static final int BATCH = 4096;
+
+    /** Size of the rotor's alphabet. */
+    @Param({"26", "64", "256"})
+    public int alphabetSize;
+
+    /** Rotor under test. */
+    private Rotor _rotor;
+
+    /** Indices to convert. */
+    private int[] _input;
+
+    /** Build the rotor and its input. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = BenchSupport.alphabet(alphabetSize);
+        _rotor = new MovingRotor("R", new Permutation(
+            BenchSupport.cycles(alpha, new Random(BenchSupport.SEED), false),
+            alpha), String.valueOf(alpha.toChar(0)));
+        _input = BenchSupport.indices(alphabetSize, BATCH);
+    }
+
+    /** Pass a batch of indices forward through the rotor. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int convertForward() {
+        int sum = 0;
+        for (int p : _input) {
+            _rotor.advance();
+            sum += _rotor.convertForward(p);
+        }
+        return sum;
+    }
+
+    /** Pass a batch of indices backward through the rotor. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int convertBackward() {
+        int sum = 0;
+        for (int e : _input) {
+            _rotor.advance();
+            sum += _rotor.convertBackward(e);
+        }
+        return sum;
+    }
+}
@@ -1,20 +1,45 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters must be in the
+ *  Basic Multilingual Plane (BMP): rotor cycles and settings lines are
+ *  read a char at a time, so a supplementary character, which takes two
+ *  chars, could never be wired.  Lookups take constant time whatever the
+ *  size of the alphabet, using a table indexed directly by character that
+ *  covers the range from the alphabet's least to its greatest character.
  *  @author Daniel del Carpio
  */
 class Alphabet {
 
-    /** Private string named _chars. */
-    private String _chars;
-
     /** A new alphabet containing CHARS.  Character number #k has index
-     *  K (numbering from 0). No character may be duplicated. */
+     *  K (numbering from 0). No character may be duplicated, and none may
+     *  be half of a surrogate pair. */
     Alphabet(String chars) {
         _chars = chars;
+        int low = Character.MAX_VALUE, high = -1;
+        for (int i = 0; i < chars.length(); i += 1) {
+            char c = chars.charAt(i);
+            if (Character.isSurrogate(c)) {
+                throw error("alphabet may not contain supplementary"
+                            + " characters");
+            }
+            low = Math.min(low, c);
+            high = Math.max(high, c);
+        }
+        _low = high < 0 ? 0 : low;
+        _direct = new int[Math.max(high - _low + 1, 0)];
+        Arrays.fill(_direct, -1);
+        for (int i = 0; i < chars.length(); i += 1) {
+            char c = chars.charAt(i);
+            if (contains(c)) {
+                throw error("duplicate character '%c' in alphabet", c);
+            }
+            _direct[c - _low] = i;
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -24,12 +49,12 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return  _chars.length();
+        return _chars.length();
     }
 
     /** Returns true if preprocess(CH) is in this alphabet. */
     boolean contains(char ch) {
-        return (_chars.indexOf(ch) != -1);
+        return toInt(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -39,9 +64,24 @@ class Alphabet {
     }
 
     /** Returns the index of character preprocess(CH), which must be in
-     *  the alphabet. This is the inverse of toChar(). */
+     *  the alphabet. This is the inverse of toChar().  Returns -1 if CH
+     *  is not in the alphabet. */
     int toInt(char ch) {
-        return _chars.indexOf(ch);
+        int k = ch - _low;
+        return k >= 0 && k < _direct.length ? _direct[k] : -1;
+    }
+
+    /** Returns my characters, in order. */
+    String chars() {
+        return _chars;
     }
 
+    /** My characters, as given. */
+    private final String _chars;
+
+    /** Least character of the alphabet. */
+    private final int _low;
+
+    /** _direct[c - _low] is the index of the character C, or -1. */
+    private final int[] _direct;
 }
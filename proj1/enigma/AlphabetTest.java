@@ -0,0 +1,59 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Daniel del Carpio
+ */
+public class AlphabetTest {
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void checkUpper() {
+        assertEquals(26, UPPER.size());
+        for (int i = 0; i < UPPER_STRING.length(); i += 1) {
+            assertEquals(UPPER_STRING.charAt(i), UPPER.toChar(i));
+            assertEquals(i, UPPER.toInt(UPPER_STRING.charAt(i)));
+        }
+        assertFalse(UPPER.contains('a'));
+        assertEquals(-1, UPPER.toInt('@'));
+        assertEquals(-1, UPPER.toInt('['));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicateInAlphabet() {
+        new Alphabet("ABCA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkSupplementary() {
+        new Alphabet("AB" + new String(Character.toChars(0x1f600)));
+    }
+
+    @Test
+    public void checkLargeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = '\u4e00'; c < '\u4e00' + 3000; c += 1) {
+            chars.append(c);
+        }
+        chars.append('A');
+        Alphabet big = new Alphabet(chars.toString());
+        assertEquals(3001, big.size());
+        assertEquals(1234, big.toInt((char) ('\u4e00' + 1234)));
+        assertEquals(3000, big.toInt('A'));
+        assertEquals('A', big.toChar(3000));
+        assertEquals(-1, big.toInt('B'));
+        assertEquals(-1, big.toInt((char) ('\u4e00' + 3000)));
+        Permutation perm = new Permutation("(\u4e00\u4e01A)", big);
+        assertEquals(3000, perm.permute(1));
+        assertEquals('\u4e00', perm.permute('A'));
+    }
+}
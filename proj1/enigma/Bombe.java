@@ -0,0 +1,318 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A simulated Bombe: a known-plaintext search for the rotor order and
+ *  start settings of a message, given a crib (a guess at part of its
+ *  plaintext).
+ *
+ *  The crib and the ciphertext under it form a menu: a graph whose nodes
+ *  are letters and which has an edge between crib letter p and cipher
+ *  letter c at each position i.  If S_i is the substitution performed by
+ *  the rotors alone at position i and P is the plugboard, each edge says
+ *  that P(c) = S_i(P(p)).  For each rotor order and start setting, the
+ *  Bombe assumes in turn each value for P(t), where t is the best
+ *  connected letter of the menu, and follows the edges to derive the
+ *  values of P they imply.  An assumption that leads to a letter being
+ *  plugged to two others is contradicted; one that does not is a stop,
+ *  reported with the part of the plugboard it implies.
+ *
+ *  Rotor orders are searched as independent tasks on a ForkJoinPool.  For
+ *  each order, the substitution at every setting of its rotating rotors
+ *  is computed once into a flat table, so trying a start setting only
+ *  looks up the table row for each position of the menu.
+ *  @author Daniel del Carpio
+ */
+class Bombe {
+
+    /** A Bombe for machines with NUMROTORS slots and NUMPAWLS pawls that
+     *  can be assembled from ALLROTORS, whose alphabet is ALPHA, searching
+     *  for CRIB (as alphabet indices) at position OFFSET of CIPHERTEXT. */
+    Bombe(Alphabet alpha, int numRotors, int numPawls,
+          Collection<Rotor> allRotors, int[] crib, int[] ciphertext,
+          int offset) {
+        if (crib.length == 0 || offset < 0
+            || offset + crib.length > ciphertext.length) {
+            throw error("crib does not fit the ciphertext");
+        }
+        _template = new Machine(alpha, numRotors, numPawls, allRotors);
+        _alphabet = alpha;
+        _orders = RotorSearch.orders(numRotors, numPawls, allRotors);
+        _span = offset + crib.length;
+
+        int n = alpha.size();
+        _edgeStart = new int[n + 1];
+        for (int i = 0; i < crib.length; i += 1) {
+            _edgeStart[crib[i] + 1] += 1;
+            _edgeStart[ciphertext[offset + i] + 1] += 1;
+        }
+        int best = 0;
+        for (int x = 0; x < n; x += 1) {
+            if (_edgeStart[x + 1] > _edgeStart[best + 1]) {
+                best = x;
+            }
+            _edgeStart[x + 1] += _edgeStart[x];
+        }
+        _testLetter = best;
+        _edgeOther = new int[2 * crib.length];
+        _edgePosition = new int[2 * crib.length];
+        int[] fill = _edgeStart.clone();
+        for (int i = 0; i < crib.length; i += 1) {
+            int p = crib[i], c = ciphertext[offset + i];
+            _edgeOther[fill[p]] = c;
+            _edgePosition[fill[p]] = offset + i;
+            fill[p] += 1;
+            _edgeOther[fill[c]] = p;
+            _edgePosition[fill[c]] = offset + i;
+            fill[c] += 1;
+        }
+    }
+
+    /** Return the number of rotor orders I search. */
+    int numOrders() {
+        return _orders.size();
+    }
+
+    /** A setting of the machine that the menu does not contradict. */
+    static final class Stop {
+
+        /** A stop with rotors named ROTORS at SETTING, where the menu
+         *  implies the plugboard pairs PLUGS (in cycle notation). */
+        Stop(String[] rotors, String setting, String plugs) {
+            _rotors = rotors;
+            _setting = setting;
+            _plugs = plugs;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor settings, as for Machine.setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs implied by the menu at this stop, in
+         *  cycle notation.  Letters the menu does not reach are left
+         *  out, as are letters it implies are not plugged. */
+        String plugs() {
+            return _plugs;
+        }
+
+        /** Returns my settings line, in the form accepted by Main. */
+        @Override
+        public String toString() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            return _plugs.isEmpty() ? line : line + " " + _plugs;
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** My rotor settings. */
+        private final String _setting;
+        /** My implied plugboard pairs. */
+        private final String _plugs;
+    }
+
+    /** Return all stops, running one task per rotor order on POOL.  Stops
+     *  are listed by rotor order and then by start setting. */
+    List<Stop> search(ForkJoinPool pool) {
+        ArrayList<Order> tasks = new ArrayList<>();
+        for (String[] order : _orders) {
+            Order task = new Order(order);
+            tasks.add(task);
+            pool.execute(task);
+        }
+        ArrayList<Stop> result = new ArrayList<>();
+        for (Order task : tasks) {
+            result.addAll(task.join());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /** As for search(POOL), running on the common pool. */
+    List<Stop> search() {
+        return search(ForkJoinPool.commonPool());
+    }
+
+    /** A task that tries every start setting of one rotor order. */
+    private class Order extends RecursiveTask<List<Stop>> {
+
+        /** A task for the rotors named ORDER, reflector first. */
+        Order(String[] order) {
+            _order = order;
+        }
+
+        @Override
+        protected List<Stop> compute() {
+            Machine machine = _template.copy();
+            machine.insertRotors(_order);
+            machine.setPlugboard(new Permutation("", _alphabet));
+            machine.setCompiled(true);
+            int n = _alphabet.size();
+            int slots = _template.numRotors() - 1;
+            int moving = _template.numPawls(), fixed = slots - moving;
+            int states = 1, fixedStates = 1;
+            for (int i = 0; i < moving; i += 1) {
+                states *= n;
+            }
+            for (int i = 0; i < fixed; i += 1) {
+                fixedStates *= n;
+            }
+
+            _tables = new int[states * n];
+            _plug = new int[n];
+            _stack = new int[2 * n];
+            int[] next = new int[states];
+            _path = new int[_span];
+            int[] settings = new int[slots];
+            ArrayList<Stop> result = new ArrayList<>();
+            for (int f = 0; f < fixedStates; f += 1) {
+                decode(f, settings, 0, fixed);
+                for (int s = 0; s < states; s += 1) {
+                    decode(s, settings, fixed, slots);
+                    machine.setRotors(settings);
+                    machine.table(_tables, s * n, false);
+                    machine.skip(1);
+                    int following = 0;
+                    for (int slot = fixed + 1; slot <= slots; slot += 1) {
+                        following = following * n + machine.setting(slot);
+                    }
+                    next[s] = following;
+                }
+                for (int s = 0; s < states; s += 1) {
+                    int state = s;
+                    for (int p = 0; p < _span; p += 1) {
+                        state = next[state];
+                        _path[p] = state * n;
+                    }
+                    for (int h = 0; h < n; h += 1) {
+                        if (consistent(h)) {
+                            decode(s, settings, fixed, slots);
+                            result.add(stop(settings));
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        /** Store the digits of STATE, most significant first, in base N
+         *  (the alphabet size) in SETTINGS[FROM .. TO-1]. */
+        private void decode(int state, int[] settings, int from, int to) {
+            int n = _alphabet.size();
+            for (int i = to - 1; i >= from; i -= 1) {
+                settings[i] = state % n;
+                state /= n;
+            }
+        }
+
+        /** Return true iff assuming that the test letter is plugged to H
+         *  leads to no contradiction at the start setting whose table rows
+         *  are in _path.  On return, _plug holds the implied plugboard. */
+        private boolean consistent(int h) {
+            Arrays.fill(_plug, -1);
+            _top = 0;
+            if (!plug(_testLetter, h)) {
+                return false;
+            }
+            while (_top > 0) {
+                _top -= 1;
+                int x = _stack[_top], y = _plug[x];
+                for (int k = _edgeStart[x]; k < _edgeStart[x + 1]; k += 1) {
+                    int z = _edgeOther[k];
+                    if (!plug(z, _tables[_path[_edgePosition[k]] + y])) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record in _plug that X is plugged to Y, and push the letters
+         *  whose plugs became known onto _stack.  Return false iff this
+         *  contradicts what is already recorded. */
+        private boolean plug(int x, int y) {
+            if (_plug[x] == y) {
+                return true;
+            }
+            if (_plug[x] != -1 || _plug[y] != -1) {
+                return false;
+            }
+            _plug[x] = y;
+            _plug[y] = x;
+            _stack[_top] = x;
+            _top += 1;
+            if (y != x) {
+                _stack[_top] = y;
+                _top += 1;
+            }
+            return true;
+        }
+
+        /** Return the stop for start setting SETTINGS with the plugboard
+         *  now in _plug. */
+        private Stop stop(int[] settings) {
+            StringBuilder setting = new StringBuilder();
+            for (int s : settings) {
+                setting.append(_alphabet.toChar(s));
+            }
+            int[] plugs = new int[_plug.length];
+            for (int x = 0; x < plugs.length; x += 1) {
+                plugs[x] = _plug[x] == -1 ? x : _plug[x];
+            }
+            return new Stop(_order, setting.toString(),
+                            new Permutation(plugs, _alphabet).toString());
+        }
+
+        /** Names of the rotors of this order. */
+        private final String[] _order;
+        /** _tables[s * N + c] is the substitution of C by the rotors when
+         *  the rotating ones are at state S (their settings as a number
+         *  in base N, slot 1 most significant), where N is the alphabet
+         *  size. */
+        private int[] _tables;
+        /** _path[p] is the offset in _tables of the row in use at position
+         *  P of the message, for the start setting being tried. */
+        private int[] _path;
+        /** _plug[x] is the letter X is plugged to, or -1 if unknown. */
+        private int[] _plug;
+        /** Letters whose plugs are known but whose edges are not yet
+         *  followed, in _stack[0 .. _top-1]. */
+        private int[] _stack;
+        /** See _stack. */
+        private int _top;
+    }
+
+    /** Alphabet of the machines searched. */
+    private final Alphabet _alphabet;
+
+    /** Unassembled machine from which each order's machine is copied. */
+    private final Machine _template;
+
+    /** All rotor orders searched, reflector first. */
+    private final ArrayList<String[]> _orders;
+
+    /** Number of message positions up to the end of the crib. */
+    private final int _span;
+
+    /** The menu letter with the most edges. */
+    private final int _testLetter;
+
+    /** The menu, as adjacency lists: the edges of letter x are numbered
+     *  _edgeStart[x] to _edgeStart[x+1]-1, and edge k joins x to
+     *  _edgeOther[k] at message position _edgePosition[k]. */
+    private final int[] _edgeStart;
+    /** See _edgeStart. */
+    private final int[] _edgeOther, _edgePosition;
+}
@@ -0,0 +1,73 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Daniel del Carpio
+ */
+public class BombeTest {
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return rotors I, II, III and reflector B over UPPER. */
+    private static ArrayList<Rotor> rotors() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new MovingRotor("I",
+                new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        rotors.add(new MovingRotor("II",
+                new Permutation(NAVALA.get("II"), UPPER), "E"));
+        rotors.add(new MovingRotor("III",
+                new Permutation(NAVALA.get("III"), UPPER), "V"));
+        rotors.add(new Reflector("B",
+                new Permutation(NAVALA.get("B"), UPPER)));
+        return rotors;
+    }
+
+    /** Return the indices of the characters of S in UPPER. */
+    private static int[] indices(String s) {
+        int[] result = new int[s.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = UPPER.toInt(s.charAt(i));
+        }
+        return result;
+    }
+
+    @Test
+    public void checkKnownStop() {
+        String plugs = "(AT) (BL) (CQ) (DZ) (EP) (FW) (GX)";
+        Machine mach = new Machine(UPPER, 4, 3, rotors());
+        mach.insertRotors(new String[] { "B", "I", "II", "III" });
+        mach.setRotors("QRS");
+        mach.setPlugboard(new Permutation(plugs, UPPER));
+        String crib = "WETTERVORHERSAGEBISKAYA";
+        String ciphertext = mach.convert("HEUTE" + crib);
+        Bombe bombe = new Bombe(UPPER, 4, 3, rotors(), indices(crib),
+                                indices(ciphertext), 5);
+        assertEquals(6, bombe.numOrders());
+        List<Bombe.Stop> stops = bombe.search();
+        boolean found = false;
+        for (Bombe.Stop stop : stops) {
+            if (stop.toString().equals("* B I II III QRS " + plugs)) {
+                found = true;
+            }
+        }
+        assertTrue(found);
+        assertTrue(stops.size() < 100);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkCribTooLong() {
+        new Bombe(UPPER, 4, 3, rotors(), indices("ABCDEF"),
+                  indices("XYZ"), 0);
+    }
+}
@@ -0,0 +1,67 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A settings line in parsed, checked form, ready to be applied to any
+ *  machine of its configuration by Machine.apply: the rotors of each slot,
+ *  the initial rotor settings and the plugboard table.  Compiled settings
+ *  are immutable and may be shared among threads.  Two are equal if they
+ *  have the same Rotor objects, positions and plugboard.
+ *  @author Daniel del Carpio
+ */
+final class CompiledSetting {
+
+    /** A setting with ROTORS in slots 0 .. ROTORS.length-1 (slot 0 holds
+     *  the reflector), POSITIONS[k] the setting of the rotor in slot K + 1,
+     *  and PLUGS the plugboard table (PLUGS[i] is the index that index I is
+     *  plugged to).  The arrays become mine and must not be modified. */
+    CompiledSetting(Rotor[] rotors, int[] positions, int[] plugs) {
+        _rotors = rotors;
+        _positions = positions;
+        _plugs = plugs;
+    }
+
+    /** Return the rotors of my slots.  The array is shared and must not be
+     *  modified. */
+    Rotor[] rotors() {
+        return _rotors;
+    }
+
+    /** Return my initial rotor settings, excluding the reflector.  The
+     *  array is shared and must not be modified. */
+    int[] positions() {
+        return _positions;
+    }
+
+    /** Return my plugboard table.  The array is shared and must not be
+     *  modified. */
+    int[] plugs() {
+        return _plugs;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof CompiledSetting)) {
+            return false;
+        }
+        CompiledSetting other = (CompiledSetting) obj;
+        return Arrays.equals(_rotors, other._rotors)
+            && Arrays.equals(_positions, other._positions)
+            && Arrays.equals(_plugs, other._plugs);
+    }
+
+    @Override
+    public int hashCode() {
+        return (Arrays.hashCode(_rotors) * 31 + Arrays.hashCode(_positions))
+            * 31 + Arrays.hashCode(_plugs);
+    }
+
+    /** Rotors of each slot. */
+    private final Rotor[] _rotors;
+
+    /** Initial settings of the rotors in slots 1 and up. */
+    private final int[] _positions;
+
+    /** Plugboard table. */
+    private final int[] _plugs;
+}
@@ -0,0 +1,252 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A machine configuration in compiled, binary form, so that it can be
+ *  loaded without parsing text.  An image holds, in order: MAGIC; the
+ *  alphabet, as a count followed by its characters; the numbers of rotor
+ *  slots and pawls; and the number of rotors followed by each rotor.  A
+ *  rotor is its type ('M', 'N' or 'R'), its name (as a count and
+ *  characters), its N forward substitution tables followed by its N
+ *  backward ones, in order of setting and one char per entry, and, for
+ *  moving rotors, its notch map as a bitmap of (N + 7) / 8 bytes, where N
+ *  is the alphabet size.  All numbers are big-endian.  The tables are
+ *  those of the rotor's Wiring, so loading an image only copies them back
+ *  rather than rebuilding the 2 * N permutations of every rotor; the
+ *  price is an image of about 4 * N * N bytes per rotor (36 MB per rotor
+ *  for N = 3000).
+ *  @author Daniel del Carpio
+ */
+class ConfigImage {
+
+    /** An image of the configuration with alphabet ALPHA, NUMROTORS rotor
+     *  slots, NUMPAWLS pawls and available rotors ALLROTORS. */
+    ConfigImage(Alphabet alpha, int numRotors, int numPawls,
+                Collection<Rotor> allRotors) {
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _numPawls = numPawls;
+        _allRotors = Collections.unmodifiableList(
+            new ArrayList<>(allRotors));
+    }
+
+    /** Return true iff BYTES start like an image. */
+    static boolean isImage(byte[] bytes) {
+        return bytes.length >= Integer.BYTES
+            && ByteBuffer.wrap(bytes).getInt() == MAGIC;
+    }
+
+    /** Return the image held in BYTES. */
+    static ConfigImage read(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        try {
+            if (buf.getInt() != MAGIC) {
+                throw error("not a configuration image");
+            }
+            Alphabet alpha = new Alphabet(readString(buf));
+            int n = alpha.size();
+            int numRotors = buf.getInt();
+            int numPawls = buf.getInt();
+            int count = buf.getInt();
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            byte[] bitmap = new byte[(n + Byte.SIZE - 1) / Byte.SIZE];
+            for (int r = 0; r < count; r += 1) {
+                byte type = buf.get();
+                String name = readString(buf);
+                int[][] forward = readTables(buf, n);
+                int[][] backward = readTables(buf, n);
+                checkTables(name, forward, backward);
+                Permutation perm = new Permutation(forward[0], alpha);
+                boolean[] notchMap = null;
+                if (type == 'M') {
+                    buf.get(bitmap);
+                    notchMap = new boolean[n];
+                    for (int i = 0; i < n; i += 1) {
+                        notchMap[i] =
+                            (bitmap[i / Byte.SIZE] & (1 << (i % Byte.SIZE)))
+                            != 0;
+                    }
+                }
+                Wiring wiring =
+                    new Wiring(name, perm, forward, backward, notchMap);
+                if (type == 'M') {
+                    rotors.add(new MovingRotor(wiring));
+                } else if (type == 'N') {
+                    rotors.add(new FixedRotor(wiring));
+                } else if (type == 'R') {
+                    rotors.add(new Reflector(wiring));
+                } else {
+                    throw error("bad rotor type in configuration image");
+                }
+            }
+            if (buf.hasRemaining()) {
+                throw error("junk at end of configuration image");
+            }
+            return new ConfigImage(alpha, numRotors, numPawls, rotors);
+        } catch (BufferUnderflowException excp) {
+            throw error("configuration image truncated");
+        }
+    }
+
+    /** Write me to FILE. */
+    void write(Path file) {
+        int n = _alphabet.size();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            writeString(out, _alphabet.chars());
+            out.writeInt(_numRotors);
+            out.writeInt(_numPawls);
+            out.writeInt(_allRotors.size());
+            for (Rotor r : _allRotors) {
+                out.writeByte(r.rotates() ? 'M'
+                              : r instanceof Reflector ? 'R' : 'N');
+                writeString(out, r.name());
+                Wiring wiring = r.wiring();
+                for (int setting = 0; setting < n; setting += 1) {
+                    writeTable(out, wiring.forwardTable(setting));
+                }
+                for (int setting = 0; setting < n; setting += 1) {
+                    writeTable(out, wiring.backwardTable(setting));
+                }
+                if (r.rotates()) {
+                    boolean[] notchMap = r.notchMap();
+                    byte[] bitmap = new byte[(n + Byte.SIZE - 1) / Byte.SIZE];
+                    for (int i = 0; notchMap != null && i < n; i += 1) {
+                        if (notchMap[i]) {
+                            bitmap[i / Byte.SIZE] |= 1 << (i % Byte.SIZE);
+                        }
+                    }
+                    out.write(bitmap);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not build configuration image: %s",
+                        excp.getMessage());
+        }
+        try {
+            Files.write(file, bytes.toByteArray());
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return my number of pawls. */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /** Return my available rotors, in configuration order. */
+    List<Rotor> allRotors() {
+        return _allRotors;
+    }
+
+    /** Return a new machine with my configuration. */
+    Machine machine() {
+        return new Machine(_alphabet, _numRotors, _numPawls, _allRotors);
+    }
+
+    /** Write S to OUT as its length in chars followed by its chars. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    /** Write TABLE to OUT, one char per entry. */
+    private static void writeTable(DataOutputStream out, int[] table)
+        throws IOException {
+        for (int entry : table) {
+            out.writeChar(entry);
+        }
+    }
+
+    /** Return the N tables of N entries each at the position of BUF, as
+     *  written by writeTable, advancing past them. */
+    private static int[][] readTables(ByteBuffer buf, int n) {
+        if ((long) n * n > buf.remaining() / Character.BYTES) {
+            throw error("configuration image truncated");
+        }
+        CharBuffer chars = buf.asCharBuffer();
+        char[] row = new char[n];
+        int[][] tables = new int[n][n];
+        for (int s = 0; s < n; s += 1) {
+            chars.get(row);
+            for (int i = 0; i < n; i += 1) {
+                tables[s][i] = row[i];
+            }
+        }
+        buf.position(buf.position() + n * n * Character.BYTES);
+        return tables;
+    }
+
+    /** Check that FORWARD and BACKWARD, the tables read for the rotor
+     *  named NAME, hold inverse permutations at each setting, so that a
+     *  damaged image cannot produce indices outside the alphabet. */
+    private static void checkTables(String name, int[][] forward,
+                                    int[][] backward) {
+        int n = forward.length;
+        for (int s = 0; s < n; s += 1) {
+            for (int i = 0; i < n; i += 1) {
+                int e = forward[s][i];
+                if (e >= n || backward[s][e] != i) {
+                    throw error("bad tables for rotor %s in configuration"
+                                + " image", name);
+                }
+            }
+        }
+    }
+
+    /** Return the string written by writeString at the position of BUF,
+     *  advancing past it. */
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining() / Character.BYTES) {
+            throw error("configuration image truncated");
+        }
+        char[] chars = new char[length];
+        buf.asCharBuffer().get(chars);
+        buf.position(buf.position() + length * Character.BYTES);
+        return new String(chars);
+    }
+
+    /** Identifies a configuration image.  Its first byte, 0xc0, never
+     *  occurs in ASCII or UTF-8 text, so no text configuration is taken
+     *  for an image. */
+    static final int MAGIC = 0xc0454e48;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** My number of rotor slots. */
+    private final int _numRotors;
+
+    /** My number of pawls. */
+    private final int _numPawls;
+
+    /** My available rotors. */
+    private final List<Rotor> _allRotors;
+}
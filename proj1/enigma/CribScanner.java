@@ -0,0 +1,173 @@
+package enigma;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Finds the positions of a ciphertext at which a crib may lie.  Since the
+ *  reflector maps no character to itself, a machine never converts a
+ *  character to itself, so a crib cannot lie at any position where one of
+ *  its characters matches the ciphertext character under it.
+ *
+ *  For alphabets of at most 256 characters, the ciphertext is kept as one
+ *  byte per character and eight consecutive positions are tested at once:
+ *  each crib character is compared against a long word read from the
+ *  ciphertext at once, and the zero bytes of the exclusive or mark the
+ *  positions it rules out.
+ *  @author Daniel del Carpio
+ */
+class CribScanner {
+
+    /** A scanner for CRIB in the first LENGTH characters of CIPHERTEXT,
+     *  both as alphabet indices over ALPHA. */
+    CribScanner(Alphabet alpha, int[] crib, int[] ciphertext, int length) {
+        if (crib.length == 0) {
+            throw error("empty crib");
+        }
+        _crib = crib.clone();
+        _ciphertext = Arrays.copyOf(ciphertext, length);
+        _packed = alpha.size() <= Machine.BYTE_ALPHABET_LIMIT;
+        if (_packed) {
+            _bytes = new byte[length + Long.BYTES];
+            for (int i = 0; i < length; i += 1) {
+                _bytes[i] = (byte) ciphertext[i];
+            }
+            _broadcast = new long[crib.length];
+            for (int i = 0; i < crib.length; i += 1) {
+                _broadcast[i] = (crib[i] & 0xffL) * LOW_BITS;
+            }
+        } else {
+            _bytes = null;
+            _broadcast = null;
+        }
+    }
+
+    /** Return the number of characters in my crib. */
+    int cribLength() {
+        return _crib.length;
+    }
+
+    /** Return, in increasing order, every position of my ciphertext at
+     *  which my crib fits without any of its characters meeting an equal
+     *  ciphertext character. */
+    int[] scan() {
+        int last = _ciphertext.length - _crib.length;
+        if (last < 0) {
+            return new int[0];
+        }
+        int[] result = new int[last + 1];
+        int count =
+            _packed ? scanPacked(last, result) : scanPlain(last, result);
+        return Arrays.copyOf(result, count);
+    }
+
+    /** Store in RESULT the surviving positions 0 .. LAST, testing eight at
+     *  a time, and return their number. */
+    private int scanPacked(int last, int[] result) {
+        int count = 0;
+        byte[] bytes = _bytes;
+        long[] broadcast = _broadcast;
+        for (int p = 0; p <= last; p += Long.BYTES) {
+            long ruledOut = 0;
+            for (int i = 0; i < broadcast.length; i += 1) {
+                long x = (long) WORDS.get(bytes, p + i) ^ broadcast[i];
+                ruledOut |= ~(((x & LOW_SEVEN) + LOW_SEVEN) | x) & HIGH_BITS;
+                if (ruledOut == HIGH_BITS) {
+                    break;
+                }
+            }
+            for (long alive = ~ruledOut & HIGH_BITS; alive != 0;
+                 alive &= alive - 1) {
+                int position = p + (Long.numberOfTrailingZeros(alive) >>> 3);
+                if (position > last) {
+                    break;
+                }
+                result[count] = position;
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Store in RESULT the surviving positions 0 .. LAST, testing one at a
+     *  time, and return their number. */
+    private int scanPlain(int last, int[] result) {
+        int count = 0;
+        for (int p = 0; p <= last; p += 1) {
+            int i;
+            for (i = 0; i < _crib.length; i += 1) {
+                if (_crib[i] == _ciphertext[p + i]) {
+                    break;
+                }
+            }
+            if (i == _crib.length) {
+                result[count] = p;
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Return, in increasing order, those of POSITIONS (which must be
+     *  increasing) at which MACHINE, set up as it would be at the start
+     *  of my ciphertext, converts my ciphertext into my crib.  MACHINE
+     *  itself is not changed.  Positions may overlap, so each is tried on
+     *  a copy of a machine that is skipped forward from one position to
+     *  the next. */
+    int[] verify(Machine machine, int[] positions) {
+        Machine m = machine.copy();
+        int[] plain = new int[_crib.length];
+        int[] result = new int[positions.length];
+        int count = 0;
+        long at = 0;
+        for (int p : positions) {
+            m.skip(p - at);
+            at = p;
+            m.copy().convert(_ciphertext, p, plain, 0, plain.length);
+            if (Arrays.equals(plain, _crib)) {
+                result[count] = p;
+                count += 1;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /** As for verify(MACHINE, scan()). */
+    int[] verify(Machine machine) {
+        return verify(machine, scan());
+    }
+
+    /** Access to a byte array as little-endian long words at any byte
+     *  offset, so that byte k of a word is the character at offset k. */
+    private static final VarHandle WORDS =
+        MethodHandles.byteArrayViewVarHandle(long[].class,
+                                             ByteOrder.LITTLE_ENDIAN);
+
+    /** A word with the low bit of each byte set. */
+    private static final long LOW_BITS = 0x0101010101010101L;
+    /** A word with the low seven bits of each byte set. */
+    private static final long LOW_SEVEN = 0x7f7f7f7f7f7f7f7fL;
+    /** A word with the high bit of each byte set. */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /** The crib, as alphabet indices. */
+    private final int[] _crib;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _ciphertext;
+
+    /** True iff the alphabet is small enough to scan in bytes. */
+    private final boolean _packed;
+
+    /** The ciphertext, one byte per character, followed by Long.BYTES
+     *  bytes of padding so that every word read is in bounds, or null if
+     *  not _packed. */
+    private final byte[] _bytes;
+
+    /** _broadcast[i] has every byte equal to _crib[i], or null if not
+     *  _packed. */
+    private final long[] _broadcast;
+}
@@ -0,0 +1,113 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribScanner class.
+ *  @author Daniel del Carpio
+ */
+public class CribScannerTest {
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** An alphabet of 300 characters, too large for packed scanning. */
+    private static final Alphabet LARGE;
+
+    static {
+        StringBuilder chars = new StringBuilder();
+        for (char c = 'A'; chars.length() < 300; c += 1) {
+            chars.append(c);
+        }
+        LARGE = new Alphabet(chars.toString());
+    }
+
+    /** Return the positions of CIPHERTEXT at which CRIB fits, found one
+     *  position and character at a time. */
+    private static int[] expected(int[] crib, int[] ciphertext) {
+        int[] result = new int[ciphertext.length + 1];
+        int count = 0;
+        for (int p = 0; p + crib.length <= ciphertext.length; p += 1) {
+            boolean fits = true;
+            for (int i = 0; i < crib.length; i += 1) {
+                fits &= crib[i] != ciphertext[p + i];
+            }
+            if (fits) {
+                result[count] = p;
+                count += 1;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /** Return an array of LENGTH random indices less than N from
+     *  RANDOM. */
+    private static int[] random(Random random, int length, int n) {
+        int[] result = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = random.nextInt(n);
+        }
+        return result;
+    }
+
+    @Test
+    public void checkPackedAgainstPlain() {
+        Random random = new Random(61);
+        for (int length = 0; length <= 40; length += 1) {
+            for (int cribLength = 1; cribLength <= 10; cribLength += 1) {
+                int[] crib = random(random, cribLength, 4);
+                int[] ciphertext = random(random, length, 4);
+                int[] expect = expected(crib, ciphertext);
+                int[] packed = new CribScanner(UPPER, crib, ciphertext,
+                                               length).scan();
+                int[] plain = new CribScanner(LARGE, crib, ciphertext,
+                                              length).scan();
+                assertArrayEquals(expect, packed);
+                assertArrayEquals(expect, plain);
+            }
+        }
+    }
+
+    @Test
+    public void checkLastOffset() {
+        for (int length = 1; length <= 24; length += 1) {
+            int[] ciphertext = new int[length];
+            int[] crib = { 1, 1, 1 };
+            if (length >= crib.length) {
+                Arrays.fill(ciphertext, 1);
+                Arrays.fill(ciphertext, length - crib.length, length, 0);
+            }
+            int[] expect =
+                length >= crib.length ? new int[] { length - crib.length }
+                : new int[0];
+            assertArrayEquals(expect, new CribScanner(UPPER, crib,
+                                                      ciphertext,
+                                                      length).scan());
+            assertArrayEquals(expect, new CribScanner(LARGE, crib,
+                                                      ciphertext,
+                                                      length).scan());
+        }
+    }
+
+    @Test
+    public void checkLargeIndices() {
+        Random random = new Random(62);
+        int[] crib = random(random, 5, LARGE.size());
+        int[] ciphertext = random(random, 1000, LARGE.size());
+        for (int i = 0; i < crib.length; i += 1) {
+            ciphertext[100 + i] = crib[i];
+        }
+        int[] plain = new CribScanner(LARGE, crib, ciphertext,
+                                      ciphertext.length).scan();
+        assertArrayEquals(expected(crib, ciphertext), plain);
+        assertTrue(Arrays.binarySearch(plain, 100) < 0);
+    }
+}
@@ -0,0 +1,434 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+
+/** A catalog of the cycle characteristics of a machine, after Rejewski.
+ *
+ *  If a message key k is sent twice, as the first six characters of a
+ *  message, the permutations A .. F that the machine performs at those
+ *  positions satisfy c[3] = D(A(c[0])), and likewise for BE and CF.  The
+ *  lengths of the cycles of DA, EB and FC (the characteristic) do not
+ *  depend on the plugboard, so they can be tabulated for every rotor order
+ *  and start setting in advance and matched against the characteristic
+ *  that a day's intercepted indicators determine.
+ *
+ *  A characteristic is stored as a number: each of its three products
+ *  contributes the rank of the partition of the alphabet size formed by
+ *  its cycle lengths.  A catalog file holds, after a header naming its
+ *  alphabet and rotor orders, the sorted distinct characteristics with
+ *  the position of their first setting, followed by all settings grouped
+ *  by characteristic.  Lookups binary-search a read-only memory mapping
+ *  of the file.
+ *  @author Daniel del Carpio
+ */
+class CycleCatalog {
+
+    /** Open the catalog in FILE for lookups. */
+    CycleCatalog(Path file) {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            MappedByteBuffer header =
+                channel.map(READ_ONLY, 0, Math.min(channel.size(),
+                                                   MAX_HEADER));
+            long numRecords, keysStart;
+            try {
+                if (header.getInt() != MAGIC) {
+                    throw error("%s is not a cycle catalog", file);
+                }
+                _alphabet = new Alphabet(readString(header));
+                _numRotors = header.getInt();
+                int numOrders = header.getInt();
+                if (numOrders < 0) {
+                    throw new BufferUnderflowException();
+                }
+                _orders = new String[numOrders];
+                for (int i = 0; i < numOrders; i += 1) {
+                    _orders[i] = readString(header);
+                }
+                _numKeys = header.getInt();
+                numRecords = header.getLong();
+                keysStart = header.position();
+            } catch (BufferUnderflowException excp) {
+                throw error("%s is truncated", file);
+            }
+            if (_numKeys < 0 || numRecords < 0) {
+                throw error("%s is not a cycle catalog", file);
+            }
+            long keysSize = (long) (_numKeys + 1) * KEY_BYTES;
+            long recordsSize = numRecords * Long.BYTES;
+            if (keysSize > Integer.MAX_VALUE
+                || recordsSize > Integer.MAX_VALUE) {
+                throw error("%s is too large to map", file);
+            }
+            if (keysStart + keysSize + recordsSize != channel.size()) {
+                throw error("%s is truncated", file);
+            }
+            _keys = channel.map(READ_ONLY, keysStart, keysSize);
+            _records = channel.map(READ_ONLY, keysStart + keysSize,
+                                   recordsSize);
+        } catch (IOException excp) {
+            throw error("could not read catalog %s: %s", file,
+                        excp.getMessage());
+        }
+        long settings = 1;
+        for (int i = 1; i < _numRotors; i += 1) {
+            settings *= _alphabet.size();
+        }
+        _settingsPerOrder = settings;
+    }
+
+    /** Return the alphabet of my catalog. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the settings lines (rotor order and start setting, without
+     *  plugboard) of every entry of my catalog whose characteristic is
+     *  KEY, by rotor order and then start setting. */
+    List<String> lookup(long key) {
+        int lo = 0, hi = _numKeys;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_keys.getLong(mid * KEY_BYTES) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == _numKeys || _keys.getLong(lo * KEY_BYTES) != key) {
+            return Collections.emptyList();
+        }
+        long first = _keys.getLong(lo * KEY_BYTES + Long.BYTES),
+            last = _keys.getLong((lo + 1) * KEY_BYTES + Long.BYTES);
+        ArrayList<String> result = new ArrayList<>();
+        int n = _alphabet.size();
+        char[] setting = new char[_numRotors - 1];
+        for (long r = first; r < last; r += 1) {
+            long entry = _records.getLong((int) (r * Long.BYTES));
+            long rest = entry % _settingsPerOrder;
+            for (int i = setting.length - 1; i >= 0; i -= 1) {
+                setting[i] = _alphabet.toChar((int) (rest % n));
+                rest /= n;
+            }
+            result.add("* " + _orders[(int) (entry / _settingsPerOrder)]
+                       + " " + new String(setting));
+        }
+        return result;
+    }
+
+    /** Write to FILE a catalog of every rotor order and start setting of
+     *  machines with NUMROTORS slots and NUMPAWLS pawls that can be
+     *  assembled from ALLROTORS, whose alphabet is ALPHA.  Each rotor
+     *  order is generated by its own task on POOL. */
+    static void write(Path file, Alphabet alpha, int numRotors, int numPawls,
+                      Collection<Rotor> allRotors, ForkJoinPool pool) {
+        int n = alpha.size();
+        long[][] partitions = partitions(n);
+        Machine template = new Machine(alpha, numRotors, numPawls, allRotors);
+        ArrayList<String[]> orders =
+            RotorSearch.orders(numRotors, numPawls, allRotors);
+        long settingsPerOrder = 1;
+        for (int i = 1; i < numRotors; i += 1) {
+            settingsPerOrder *= n;
+        }
+        long total = settingsPerOrder * orders.size();
+        if (total > Integer.MAX_VALUE - 8) {
+            throw error("too many settings to catalog");
+        }
+
+        ArrayList<Generate> tasks = new ArrayList<>();
+        for (String[] order : orders) {
+            Generate task = new Generate(template, alpha, order, partitions,
+                                         (int) settingsPerOrder);
+            tasks.add(task);
+            pool.execute(task);
+        }
+        long[] keys = new long[(int) total];
+        for (int i = 0; i < tasks.size(); i += 1) {
+            System.arraycopy(tasks.get(i).join(), 0, keys,
+                             (int) (i * settingsPerOrder),
+                             (int) settingsPerOrder);
+        }
+
+        long[] distinct = keys.clone();
+        Arrays.parallelSort(distinct);
+        int numKeys = 0;
+        for (int i = 0; i < distinct.length; i += 1) {
+            if (numKeys == 0 || distinct[i] != distinct[numKeys - 1]) {
+                distinct[numKeys] = distinct[i];
+                numKeys += 1;
+            }
+        }
+        long[] starts = new long[numKeys + 1];
+        int[] bucket = new int[keys.length];
+        for (int i = 0; i < keys.length; i += 1) {
+            bucket[i] = Arrays.binarySearch(distinct, 0, numKeys, keys[i]);
+            starts[bucket[i] + 1] += 1;
+        }
+        for (int k = 0; k < numKeys; k += 1) {
+            starts[k + 1] += starts[k];
+        }
+        long[] records = new long[keys.length];
+        long[] fill = Arrays.copyOf(starts, numKeys);
+        for (int i = 0; i < keys.length; i += 1) {
+            records[(int) fill[bucket[i]]] = i;
+            fill[bucket[i]] += 1;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(file),
+                                          1 << 16))) {
+            out.writeInt(MAGIC);
+            writeString(out, alpha.chars());
+            out.writeInt(numRotors);
+            out.writeInt(orders.size());
+            for (String[] order : orders) {
+                writeString(out, String.join(" ", order));
+            }
+            out.writeInt(numKeys);
+            out.writeLong(records.length);
+            for (int k = 0; k <= numKeys; k += 1) {
+                out.writeLong(k < numKeys ? distinct[k] : Long.MAX_VALUE);
+                out.writeLong(starts[k]);
+            }
+            for (long r : records) {
+                out.writeLong(r);
+            }
+        } catch (IOException excp) {
+            throw error("could not write catalog %s: %s", file,
+                        excp.getMessage());
+        }
+    }
+
+    /** As for write(FILE, ALPHA, NUMROTORS, NUMPAWLS, ALLROTORS, POOL),
+     *  running on the common pool. */
+    static void write(Path file, Alphabet alpha, int numRotors, int numPawls,
+                      Collection<Rotor> allRotors) {
+        write(file, alpha, numRotors, numPawls, allRotors,
+              ForkJoinPool.commonPool());
+    }
+
+    /** A task that computes the characteristic of every start setting of
+     *  one rotor order, returning them indexed by setting (as a number in
+     *  base N, slot 1 most significant, where N is the alphabet size). */
+    private static class Generate extends RecursiveTask<long[]> {
+
+        /** A task for the rotors named ORDER in a copy of TEMPLATE, whose
+         *  alphabet is ALPHA and which has SETTINGS start settings per
+         *  order, ranking cycle types with PARTITIONS. */
+        Generate(Machine template, Alphabet alpha, String[] order,
+                 long[][] partitions, int settings) {
+            _template = template;
+            _alphabet = alpha;
+            _order = order;
+            _partitions = partitions;
+            _settings = settings;
+        }
+
+        @Override
+        protected long[] compute() {
+            Machine machine = _template.copy();
+            machine.insertRotors(_order);
+            machine.setPlugboard(new Permutation("", _alphabet));
+            machine.setCompiled(true);
+            int n = _alphabet.size();
+            int[][] tables = new int[PRODUCTS * 2][n];
+            int[][] products = new int[PRODUCTS][n];
+            int[] settings = new int[machine.numRotors() - 1];
+            int[] scratch = new int[n + 1];
+            boolean[] seen = new boolean[n];
+            long[] result = new long[_settings];
+            for (int s = 0; s < _settings; s += 1) {
+                if (s == 0) {
+                    Arrays.fill(settings, 0);
+                } else {
+                    int i = settings.length - 1;
+                    while (settings[i] == n - 1) {
+                        settings[i] = 0;
+                        i -= 1;
+                    }
+                    settings[i] += 1;
+                }
+                machine.setRotors(settings);
+                for (int[] table : tables) {
+                    machine.nextTable(table, false);
+                }
+                for (int p = 0; p < PRODUCTS; p += 1) {
+                    Permutation.compose(tables[p], tables[p + PRODUCTS],
+                                        products[p]);
+                }
+                result[s] = characteristic(products, _partitions, scratch,
+                                           seen);
+            }
+            return result;
+        }
+
+        /** Unassembled machine copied for this order. */
+        private final Machine _template;
+        /** Alphabet of _template. */
+        private final Alphabet _alphabet;
+        /** Names of the rotors of this order. */
+        private final String[] _order;
+        /** Partition counts, as from partitions(). */
+        private final long[][] _partitions;
+        /** Number of start settings of this order. */
+        private final int _settings;
+    }
+
+    /** Return the characteristic of the products DA, EB and FC determined
+     *  by INDICATORS, each of which holds the six characters (as indices
+     *  into an alphabet of N characters) of a doubled, enciphered message
+     *  key.  There must be enough indicators to determine all three
+     *  products completely. */
+    static long characteristic(int[][] indicators, int n) {
+        int[][] products = new int[PRODUCTS][n];
+        for (int[] product : products) {
+            Arrays.fill(product, -1);
+        }
+        for (int[] indicator : indicators) {
+            if (indicator.length != 2 * PRODUCTS) {
+                throw error("indicators must have %d characters",
+                            2 * PRODUCTS);
+            }
+            for (int p = 0; p < PRODUCTS; p += 1) {
+                int from = indicator[p], to = indicator[p + PRODUCTS];
+                if (products[p][from] != -1 && products[p][from] != to) {
+                    throw error("inconsistent indicators");
+                }
+                products[p][from] = to;
+            }
+        }
+        for (int[] product : products) {
+            for (int c : product) {
+                if (c == -1) {
+                    throw error("too few indicators to determine"
+                                + " the characteristic");
+                }
+            }
+        }
+        return characteristic(products, partitions(n), new int[n + 1],
+                              new boolean[n]);
+    }
+
+    /** Return the characteristic of the permutations PRODUCTS, using
+     *  PARTITIONS (from partitions()) and the scratch arrays COUNTS (one
+     *  longer than the alphabet) and SEEN (as long as the alphabet). */
+    private static long characteristic(int[][] products, long[][] partitions,
+                                       int[] counts, boolean[] seen) {
+        int n = seen.length;
+        long radix = partitions[n][n];
+        long result = 0;
+        for (int[] product : products) {
+            Permutation.cycleCounts(product, counts, seen);
+            long rank = 0;
+            int rest = n;
+            for (int part = n; part > 0; part -= 1) {
+                for (int k = counts[part]; k > 0; k -= 1) {
+                    for (int v = 1; v < part; v += 1) {
+                        rank += partitions[rest - v][v];
+                    }
+                    rest -= part;
+                }
+            }
+            result = result * radix + rank;
+        }
+        return result;
+    }
+
+    /** Return a table whose element [i][j] is the number of partitions of
+     *  I into parts of at most J, for 0 <= I, J <= N.  Partitions of N are
+     *  ranked in lexicographic order of their parts, largest first, so
+     *  that the ranks run from 0 to element [N][N] - 1. */
+    private static long[][] partitions(int n) {
+        long[][] result = new long[n + 1][n + 1];
+        for (int j = 0; j <= n; j += 1) {
+            result[0][j] = 1;
+        }
+        for (int i = 1; i <= n; i += 1) {
+            for (int j = 1; j <= n; j += 1) {
+                result[i][j] = result[i][j - 1]
+                    + (j <= i ? result[i - j][j] : 0);
+            }
+        }
+        long radix = result[n][n];
+        if (radix > Math.cbrt(Long.MAX_VALUE)) {
+            throw error("alphabet too large for a cycle catalog");
+        }
+        return result;
+    }
+
+    /** Write S to OUT as its length in bytes followed by its UTF-8
+     *  encoding. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return the string written by writeString at the position of BUF,
+     *  advancing past it.  Throws BufferUnderflowException if BUF is too
+     *  short to hold it. */
+    private static String readString(MappedByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Identifies a catalog file. */
+    private static final int MAGIC = 0x454e4343;
+
+    /** Number of products (DA, EB, FC) in a characteristic. */
+    private static final int PRODUCTS = 3;
+
+    /** Size in bytes of an entry of the key table: a characteristic and
+     *  the number of the first record holding it. */
+    private static final int KEY_BYTES = 2 * Long.BYTES;
+
+    /** Largest size in bytes of a catalog header. */
+    private static final long MAX_HEADER = 1 << 24;
+
+    /** Alphabet of the catalog. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots of the machines cataloged. */
+    private final int _numRotors;
+
+    /** Rotor orders, as the names of their rotors separated by blanks. */
+    private final String[] _orders;
+
+    /** Number of start settings per rotor order. */
+    private final long _settingsPerOrder;
+
+    /** Number of distinct characteristics. */
+    private final int _numKeys;
+
+    /** The key table: _numKeys sorted characteristics followed by a
+     *  sentinel, each with the number of its first record. */
+    private final MappedByteBuffer _keys;
+
+    /** The records: each is order * settings per order + setting. */
+    private final MappedByteBuffer _records;
+}
@@ -0,0 +1,81 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CycleCatalog class.
+ *  @author Daniel del Carpio
+ */
+public class CycleCatalogTest {
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return rotors I, II, III and reflector B over UPPER. */
+    private static ArrayList<Rotor> rotors() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new MovingRotor("I",
+                new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        rotors.add(new MovingRotor("II",
+                new Permutation(NAVALA.get("II"), UPPER), "E"));
+        rotors.add(new MovingRotor("III",
+                new Permutation(NAVALA.get("III"), UPPER), "V"));
+        rotors.add(new Reflector("B",
+                new Permutation(NAVALA.get("B"), UPPER)));
+        return rotors;
+    }
+
+    /** Return a new catalog file of machines with three slots and two
+     *  pawls built from rotors(). */
+    private static Path catalog() throws IOException {
+        Path file = Files.createTempFile("enigma", ".cat");
+        file.toFile().deleteOnExit();
+        CycleCatalog.write(file, UPPER, 3, 2, rotors());
+        return file;
+    }
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        Machine mach = new Machine(UPPER, 3, 2, rotors());
+        mach.insertRotors(new String[] { "B", "III", "I" });
+        mach.setPlugboard(new Permutation("(AQ) (EP) (MZ)", UPPER));
+        int[][] indicators = new int[UPPER.size()][6];
+        for (int k = 0; k < UPPER.size(); k += 1) {
+            mach.setRotors("KD");
+            for (int i = 0; i < 6; i += 1) {
+                indicators[k][i] = mach.convert(k);
+            }
+        }
+        long key = CycleCatalog.characteristic(indicators, UPPER.size());
+        CycleCatalog catalog = new CycleCatalog(catalog());
+        assertEquals(UPPER.size(), catalog.alphabet().size());
+        assertTrue(catalog.lookup(key).contains("* B III I KD"));
+        assertEquals(0, catalog.lookup(-1).size());
+    }
+
+    @Test
+    public void checkTruncated() throws IOException {
+        Path file = catalog();
+        byte[] bytes = Files.readAllBytes(file);
+        for (int length : new int[] { 2, 10, 40 }) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            try {
+                new CycleCatalog(file);
+                fail("truncated catalog accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().endsWith("is truncated"));
+            }
+        }
+    }
+}
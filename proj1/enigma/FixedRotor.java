@@ -13,6 +13,11 @@ class FixedRotor extends Rotor {
         super(name, perm);
     }
 
+    /** A non-moving rotor with the given WIRING. */
+    FixedRotor(Wiring wiring) {
+        super(wiring);
+    }
+
     /** Return false if a fixed rotor does not have a ratchet
      *  and can't move. */
     @Override
@@ -0,0 +1,161 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** Writes Main's output to a channel through one large byte buffer.
+ *  Message letters are formatted into groups of five, separated by
+ *  blanks, directly in the buffer, which is written out in bulk only when
+ *  it fills or is flushed.  Output is encoded in the default charset, with
+ *  a fast path for ASCII characters.
+ *  @author Daniel del Carpio
+ */
+final class GroupWriter {
+
+    /** A writer to OUT. */
+    GroupWriter(WritableByteChannel out) {
+        _out = out;
+        Charset charset = Charset.defaultCharset();
+        _encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _asciiFastPath = charset.equals(StandardCharsets.UTF_8)
+            || charset.equals(StandardCharsets.US_ASCII)
+            || charset.equals(StandardCharsets.ISO_8859_1);
+        _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        _newline = System.lineSeparator().getBytes(charset);
+    }
+
+    /** Write the remaining characters of LETTERS, continuing the groups of
+     *  five of the current line.  Blanks in LETTERS are skipped. */
+    void groups(CharBuffer letters) {
+        char[] chars = letters.array();
+        int i = letters.arrayOffset() + letters.position(),
+            end = letters.arrayOffset() + letters.limit();
+        byte[] bytes = _buffer.array();
+        for (; i < end; i += 1) {
+            char c = chars[i];
+            if (c == ' ') {
+                continue;
+            }
+            if (_buffer.remaining() < 2) {
+                drain();
+            }
+            int pos = _buffer.position();
+            if (_groupCount == GROUP_SIZE) {
+                bytes[pos] = ' ';
+                pos += 1;
+                _groupCount = 0;
+            }
+            if (c < ASCII_LIMIT && _asciiFastPath) {
+                bytes[pos] = (byte) c;
+                _buffer.position(pos + 1);
+            } else {
+                _buffer.position(pos);
+                encode(c);
+            }
+            _groupCount += 1;
+        }
+        letters.position(letters.limit());
+    }
+
+    /** End the current line, so that its last group may have fewer than
+     *  five letters. */
+    void endLine() {
+        if (_buffer.remaining() < _newline.length) {
+            drain();
+        }
+        _buffer.put(_newline);
+        _groupCount = 0;
+    }
+
+    /** Write S as is, followed by a line end. */
+    void println(String s) {
+        print(s);
+        endLine();
+    }
+
+    /** Write S as is. */
+    void print(String s) {
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (!_buffer.hasRemaining()) {
+                drain();
+            }
+            if (c < ASCII_LIMIT && _asciiFastPath) {
+                _buffer.put((byte) c);
+            } else {
+                encode(c);
+            }
+        }
+    }
+
+    /** Write everything buffered to my channel. */
+    void flush() {
+        drain();
+    }
+
+    /** Encode the non-ASCII character C into the buffer. */
+    private void encode(char c) {
+        _char.clear();
+        _char.put(c).flip();
+        if (_buffer.remaining() < MAX_ENCODED) {
+            drain();
+        }
+        _encoder.encode(_char, _buffer, false);
+    }
+
+    /** Write the contents of the buffer to my channel and empty it. */
+    private void drain() {
+        _buffer.flip();
+        try {
+            while (_buffer.hasRemaining()) {
+                _out.write(_buffer);
+            }
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+        _buffer.clear();
+    }
+
+    /** Size of the output buffer in bytes. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Number of letters in a full group. */
+    private static final int GROUP_SIZE = 5;
+
+    /** Characters below this are ASCII. */
+    private static final char ASCII_LIMIT = 0x80;
+
+    /** Most bytes that one character may encode to. */
+    private static final int MAX_ENCODED = 8;
+
+    /** Destination of output. */
+    private final WritableByteChannel _out;
+
+    /** Encoder for characters that are not ASCII. */
+    private final CharsetEncoder _encoder;
+
+    /** True iff ASCII characters may be written directly as bytes. */
+    private final boolean _asciiFastPath;
+
+    /** Output not yet written to _out. */
+    private final ByteBuffer _buffer;
+
+    /** Encoded line separator. */
+    private final byte[] _newline;
+
+    /** Holds a single character being encoded. */
+    private final CharBuffer _char = CharBuffer.allocate(1);
+
+    /** Number of letters in the last group of the current line. */
+    private int _groupCount;
+}
@@ -0,0 +1,148 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the GroupWriter class.
+ *  @author Daniel del Carpio
+ */
+public class GroupWriterTest {
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Line separator written by GroupWriter. */
+    private static final String NL = System.lineSeparator();
+
+    /** Return LETTERS, which contain no blanks, in groups of five. */
+    private static String grouped(String letters) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < letters.length(); i += 1) {
+            if (i > 0 && i % 5 == 0) {
+                result.append(' ');
+            }
+            result.append(letters.charAt(i));
+        }
+        return result.toString();
+    }
+
+    /** Return a writable buffer holding LETTERS, like those that
+     *  GroupWriter is given by Main. */
+    private static CharBuffer letters(String letters) {
+        return CharBuffer.wrap(letters.toCharArray());
+    }
+
+    /** Return what GroupWriter wrote into BYTES. */
+    private static String text(ByteArrayOutputStream bytes) {
+        return new String(bytes.toByteArray(), Charset.defaultCharset());
+    }
+
+    @Test
+    public void checkGroups() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = new GroupWriter(Channels.newChannel(bytes));
+        out.groups(letters("HELLO WORLD"));
+        out.endLine();
+        out.groups(letters("ABC"));
+        out.groups(letters("DEFG"));
+        out.groups(letters(" H I "));
+        out.endLine();
+        out.groups(letters("ABCDEFGHIJ"));
+        out.endLine();
+        out.groups(letters("ABCDE"));
+        out.groups(letters("F"));
+        out.endLine();
+        out.flush();
+        assertEquals("HELLO WORLD" + NL + "ABCDE FGHI" + NL
+                     + "ABCDE FGHIJ" + NL + "ABCDE F" + NL, text(bytes));
+    }
+
+    @Test
+    public void checkBufferView() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = new GroupWriter(Channels.newChannel(bytes));
+        char[] chars = "XXABCDEFGXX".toCharArray();
+        CharBuffer letters = CharBuffer.wrap(chars, 2, 7);
+        out.groups(letters);
+        assertFalse(letters.hasRemaining());
+        letters = CharBuffer.wrap(chars, 2, 3).slice();
+        out.groups(letters);
+        assertFalse(letters.hasRemaining());
+        out.endLine();
+        out.flush();
+        assertEquals("ABCDE FGABC" + NL, text(bytes));
+    }
+
+    @Test
+    public void checkEmptyLines() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = new GroupWriter(Channels.newChannel(bytes));
+        out.endLine();
+        out.groups(letters(""));
+        out.groups(letters("   "));
+        out.endLine();
+        out.println("");
+        out.print("A B");
+        out.println(" C");
+        out.flush();
+        assertEquals(NL + NL + NL + "A B C" + NL, text(bytes));
+    }
+
+    @Test
+    public void checkRollover() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WritableByteChannel channel = Channels.newChannel(bytes);
+        int[] writes = new int[1];
+        GroupWriter out = new GroupWriter(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                writes[0] += 1;
+                return channel.write(src);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        StringBuilder letters = new StringBuilder();
+        for (int i = 0; letters.length() < 3 * GroupWriter.BUFFER_SIZE;
+             i += 1) {
+            letters.append((char) ('A' + i % 26));
+        }
+        StringBuilder expected = new StringBuilder();
+        for (int start = 0; start < letters.length(); start += 7919) {
+            String line = letters.substring(start,
+                Math.min(start + 7919, letters.length()));
+            char[] chars = line.toCharArray();
+            for (int i = 0; i < chars.length; i += 13) {
+                out.groups(CharBuffer.wrap(chars, i,
+                                           Math.min(13, chars.length - i)));
+            }
+            out.endLine();
+            expected.append(grouped(line)).append(NL);
+        }
+        int beforeFlush = writes[0];
+        assertTrue(beforeFlush > 0);
+        assertTrue(beforeFlush < 10);
+        out.flush();
+        assertEquals(expected.toString(), text(bytes));
+        out.flush();
+        assertEquals(expected.length(), bytes.size());
+    }
+}
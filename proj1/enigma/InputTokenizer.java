@@ -0,0 +1,222 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** Splits the input to Main into settings lines, pieces of message lines
+ *  and line ends, reading from a channel through fixed, reusable buffers.
+ *
+ *  A settings line is one whose first non-blank character is '*'.  Other
+ *  lines are message lines; blanks at their start are skipped, and a line
+ *  of blanks only is just a line end.  Input is decoded in the default
+ *  charset, with a fast path for bytes that are ASCII, and every character
+ *  is upper-cased as it is decoded.  Nothing is allocated per line,
+ *  except when a settings line is longer than any seen before.
+ *  @author Daniel del Carpio
+ */
+final class InputTokenizer {
+
+    /** Returned by next() at the end of the input. */
+    static final int END_OF_INPUT = 0;
+    /** Returned by next() for a complete settings line. */
+    static final int SETTINGS = 1;
+    /** Returned by next() for part of a message line. */
+    static final int MESSAGE = 2;
+    /** Returned by next() for the end of a message or blank line. */
+    static final int END_OF_LINE = 3;
+
+    /** A tokenizer reading from IN. */
+    InputTokenizer(ReadableByteChannel in) {
+        _in = in;
+        Charset charset = Charset.defaultCharset();
+        _decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _asciiFastPath = charset.equals(StandardCharsets.UTF_8)
+            || charset.equals(StandardCharsets.US_ASCII)
+            || charset.equals(StandardCharsets.ISO_8859_1);
+        _bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        _chars = CharBuffer.allocate(BUFFER_SIZE);
+        _chars.flip();
+        _message = _chars.duplicate();
+        _atLineStart = true;
+    }
+
+    /** Return the kind of the next piece of input: SETTINGS (available
+     *  from settings()), MESSAGE (available from message()), END_OF_LINE
+     *  or END_OF_INPUT.  A message line may be returned in several
+     *  MESSAGE pieces; it is followed by END_OF_LINE, even if the input
+     *  does not end in a newline. */
+    int next() {
+        while (true) {
+            if (!_chars.hasRemaining() && !fill()) {
+                if (_inSettings) {
+                    _inSettings = false;
+                    _settings.finish();
+                    return SETTINGS;
+                }
+                if (!_atLineStart || _lineSeen) {
+                    _atLineStart = true;
+                    _lineSeen = false;
+                    return END_OF_LINE;
+                }
+                return END_OF_INPUT;
+            }
+            char[] chars = _chars.array();
+            int pos = _chars.position(), limit = _chars.limit();
+            if (_inSettings) {
+                int end = pos;
+                while (end < limit && chars[end] != '\n') {
+                    end += 1;
+                }
+                _settings.append(chars, pos, end);
+                if (end == limit) {
+                    _chars.position(limit);
+                    continue;
+                }
+                _chars.position(end + 1);
+                _inSettings = false;
+                _settings.finish();
+                return SETTINGS;
+            } else if (_atLineStart) {
+                char c = chars[pos];
+                _chars.position(pos + 1);
+                if (c == '*') {
+                    _inSettings = true;
+                    _lineSeen = false;
+                    _settings.clear();
+                    _settings.append(c);
+                } else if (c == '\n') {
+                    _lineSeen = false;
+                    return END_OF_LINE;
+                } else if (Character.isWhitespace(c)) {
+                    _lineSeen = true;
+                } else {
+                    _chars.position(pos);
+                    _atLineStart = false;
+                }
+            } else {
+                int end = pos;
+                while (end < limit && chars[end] != '\n') {
+                    end += 1;
+                }
+                if (end == pos) {
+                    _chars.position(pos + 1);
+                    _atLineStart = true;
+                    _lineSeen = false;
+                    return END_OF_LINE;
+                }
+                _message.limit(end).position(pos);
+                _chars.position(end);
+                return MESSAGE;
+            }
+        }
+    }
+
+    /** Return the settings line last returned by next().  It is valid
+     *  until the next call to next(). */
+    SettingsLine settings() {
+        return _settings;
+    }
+
+    /** Return the piece of message last returned by next(), as a buffer
+     *  whose remaining characters are that piece.  It is valid until the
+     *  next call to next(). */
+    CharBuffer message() {
+        return _message;
+    }
+
+    /** Refill _chars, which must be empty, from _in, returning false iff
+     *  the input is exhausted. */
+    private boolean fill() {
+        if (_eof) {
+            return false;
+        }
+        _chars.clear();
+        try {
+            while (_chars.position() == 0 && !_eof) {
+                _eof = _in.read(_bytes) == -1;
+                _bytes.flip();
+                byte[] bytes = _bytes.array();
+                char[] chars = _chars.array();
+                int i = _bytes.position(), end = _bytes.limit(), j = 0;
+                if (_asciiFastPath) {
+                    while (i < end && bytes[i] >= 0) {
+                        chars[j] = upcase((char) bytes[i]);
+                        i += 1;
+                        j += 1;
+                    }
+                }
+                _bytes.position(i);
+                _chars.position(j);
+                _decoder.decode(_bytes, _chars, _eof);
+                if (_eof) {
+                    _decoder.flush(_chars);
+                }
+                for (int k = j; k < _chars.position(); k += 1) {
+                    chars[k] = upcase(chars[k]);
+                }
+                _bytes.compact();
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+        _chars.flip();
+        return _chars.hasRemaining();
+    }
+
+    /** Return C in upper case, quickly if C is ASCII. */
+    static char upcase(char c) {
+        if (c < ASCII_LIMIT) {
+            return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+        }
+        return Character.toUpperCase(c);
+    }
+
+    /** Size of the input buffers. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Characters below this are ASCII. */
+    private static final char ASCII_LIMIT = 0x80;
+
+    /** Source of input. */
+    private final ReadableByteChannel _in;
+
+    /** Decoder for bytes that are not ASCII. */
+    private final CharsetDecoder _decoder;
+
+    /** True iff ASCII bytes may be decoded directly. */
+    private final boolean _asciiFastPath;
+
+    /** Bytes read but not yet decoded. */
+    private final ByteBuffer _bytes;
+
+    /** Characters decoded but not yet returned. */
+    private final CharBuffer _chars;
+
+    /** View of _chars holding the current piece of message. */
+    private final CharBuffer _message;
+
+    /** The current settings line. */
+    private final SettingsLine _settings = new SettingsLine();
+
+    /** True iff _in is exhausted. */
+    private boolean _eof;
+
+    /** True iff in the middle of a settings line. */
+    private boolean _inSettings;
+
+    /** True iff no message has been seen on the current line. */
+    private boolean _atLineStart;
+
+    /** True iff blanks have been seen on the current line. */
+    private boolean _lineSeen;
+}
@@ -0,0 +1,117 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+import static enigma.InputTokenizer.*;
+
+/** The suite of all JUnit tests for the InputTokenizer class.
+ *  @author Daniel del Carpio
+ */
+public class InputTokenizerTest {
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the lines into which an InputTokenizer splits INPUT: each
+     *  settings line as its text from the '*' on, and each message or
+     *  blank line as its pieces of message joined together. */
+    private static List<String> lines(byte[] input) {
+        InputTokenizer tokens = new InputTokenizer(
+            Channels.newChannel(new ByteArrayInputStream(input)));
+        ArrayList<String> result = new ArrayList<>();
+        StringBuilder message = new StringBuilder();
+        for (int kind = tokens.next(); kind != END_OF_INPUT;
+             kind = tokens.next()) {
+            if (kind == SETTINGS) {
+                assertEquals(0, message.length());
+                result.add(tokens.settings().rest(0).toString());
+            } else if (kind == MESSAGE) {
+                assertTrue(tokens.message().hasRemaining());
+                message.append(tokens.message());
+            } else {
+                result.add(message.toString());
+                message.setLength(0);
+            }
+        }
+        assertEquals(END_OF_INPUT, tokens.next());
+        return result;
+    }
+
+    /** Return the lines into which an InputTokenizer splits INPUT, which
+     *  is ASCII. */
+    private static List<String> lines(String input) {
+        return lines(input.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void checkLines() {
+        assertEquals(List.of("* B I II III AAA", "HELLO WORLD", "", "",
+                             "* B I II", "ABC", "LAST"),
+                     lines("* B I II III AAA\nhello world\n\n   \n"
+                           + "  * b i ii\n  abc\nlast"));
+    }
+
+    @Test
+    public void checkEmpty() {
+        assertEquals(List.of(), lines(""));
+        assertEquals(List.of(""), lines("\n"));
+        assertEquals(List.of(""), lines("  "));
+        assertEquals(List.of("*"), lines("*"));
+    }
+
+    @Test
+    public void checkMessageFirst() {
+        InputTokenizer tokens = new InputTokenizer(Channels.newChannel(
+            new ByteArrayInputStream("hello\n* B\n".getBytes(
+                StandardCharsets.US_ASCII))));
+        assertEquals(MESSAGE, tokens.next());
+        assertEquals("HELLO", tokens.message().toString());
+        assertEquals(END_OF_LINE, tokens.next());
+        assertEquals(SETTINGS, tokens.next());
+        assertEquals("* B", tokens.settings().rest(0).toString());
+        assertEquals(END_OF_INPUT, tokens.next());
+    }
+
+    @Test
+    public void checkBufferBoundary() {
+        String first = "x".repeat(BUFFER_SIZE - 5);
+        assertEquals(List.of(first.toUpperCase(), "* B I II III AAA", "ABC"),
+                     lines(first + "\n* b i ii iii aaa\nabc\n"));
+        String longer = "y".repeat(3 * BUFFER_SIZE);
+        assertEquals(List.of("* " + longer.toUpperCase(), "Z"),
+                     lines("* " + longer + "\nz\n"));
+    }
+
+    @Test
+    public void checkUpcase() {
+        assertEquals('A', InputTokenizer.upcase('a'));
+        assertEquals('Z', InputTokenizer.upcase('z'));
+        assertEquals('[', InputTokenizer.upcase('['));
+        assertEquals('\u00c9', InputTokenizer.upcase('\u00e9'));
+        assertEquals('\u0394', InputTokenizer.upcase('\u03b4'));
+    }
+
+    @Test
+    public void checkNonAscii() {
+        byte[] input = "abc \u00e9t\u00e9 \u03b4x\n* \u00e9\n"
+            .getBytes(StandardCharsets.UTF_8);
+        String decoded = new String(input, Charset.defaultCharset());
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < decoded.length(); i += 1) {
+            expected.append(InputTokenizer.upcase(decoded.charAt(i)));
+        }
+        String[] expectedLines = expected.toString().split("\n");
+        assertEquals(List.of(expectedLines), lines(input));
+    }
+}
@@ -0,0 +1,63 @@
+package enigma;
+
+/** The substitutions performed by a machine at every state it passes
+ *  through from one start state, as a single byte table.  Row K of the
+ *  table (entries K*N .. K*N+N-1, where N is the alphabet size) is the
+ *  substitution applied to character #K after the start.  Since the
+ *  machine has finitely many states, the sequence of states is eventually
+ *  periodic: rows CYCLESTART .. LENGTH-1 repeat forever after row
+ *  LENGTH-1.  Keystreams are immutable and may be shared among threads.
+ *  @author Daniel del Carpio
+ */
+final class Keystream {
+
+    /** A keystream over an alphabet of SIZE characters with table TABLE
+     *  of LENGTH rows, the last LENGTH - CYCLESTART of which repeat.  TABLE
+     *  becomes mine and must not be modified. */
+    Keystream(byte[] table, int size, int length, int cycleStart) {
+        _table = table;
+        _size = size;
+        _end = length * size;
+        _cycle = cycleStart * size;
+    }
+
+    /** Return my table.  The array is shared and must not be modified. */
+    byte[] table() {
+        return _table;
+    }
+
+    /** Return the offset in table() of the row after the one at offset
+     *  BASE. */
+    int next(int base) {
+        base += _size;
+        return base == _end ? _cycle : base;
+    }
+
+    /** Return the offset in table() of the row K rows after the one at
+     *  offset BASE. */
+    int advance(int base, long k) {
+        long row = base / _size + k, length = _end / _size;
+        if (row >= length) {
+            long start = _cycle / _size;
+            row = start + (row - start) % (length - start);
+        }
+        return (int) row * _size;
+    }
+
+    /** Return the number of bytes I occupy, roughly. */
+    long bytes() {
+        return _table.length;
+    }
+
+    /** The substitution table. */
+    private final byte[] _table;
+
+    /** Alphabet size, and so the length of a row. */
+    private final int _size;
+
+    /** Offset of the end of the last row. */
+    private final int _end;
+
+    /** Offset of the first row that repeats. */
+    private final int _cycle;
+}
@@ -0,0 +1,114 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** Keystreams of compiled settings, kept within a memory budget and
+ *  dropped least recently used first.  A setting's keystream is built the
+ *  second time the setting is applied, so that settings used only once
+ *  cost nothing to cache.  A cache may be shared by the machines of
+ *  several threads.
+ *  @author Daniel del Carpio
+ */
+final class KeystreamCache {
+
+    /** A cache holding at most BUDGET bytes of keystreams. */
+    KeystreamCache(long budget) {
+        _budget = budget;
+    }
+
+    /** Return the keystream of SETTING, which M must have just been set
+     *  to with no characters converted, or null if it is not (yet) cached
+     *  or does not fit in my budget.  The keystream is built from M
+     *  without holding my lock, so other threads are not held up; while
+     *  it is being built, other uses of SETTING get null. */
+    Keystream get(CompiledSetting setting, Machine M) {
+        Entry entry;
+        synchronized (this) {
+            entry = _entries.get(setting);
+            if (entry == null) {
+                entry = new Entry();
+                _entries.put(setting, entry);
+            }
+            entry.uses += 1;
+            if (entry.keystream != null || entry.building
+                || entry.uses < entry.threshold) {
+                trim();
+                return entry.keystream;
+            }
+            entry.building = true;
+        }
+        Keystream keystream = M.keystream(_budget);
+        synchronized (this) {
+            entry.building = false;
+            if (keystream == null) {
+                entry.threshold = Integer.MAX_VALUE;
+            } else if (_entries.get(setting) == entry) {
+                entry.keystream = keystream;
+                _bytes += keystream.bytes();
+                trim();
+            }
+        }
+        return keystream;
+    }
+
+    /** Return the number of bytes of keystreams I hold. */
+    synchronized long bytes() {
+        return _bytes;
+    }
+
+    /** Drop the keystreams of the least recently used entries until I am
+     *  within my budget, and forget the least recently used settings
+     *  until I hold at most MAX_ENTRIES.  A setting whose keystream is
+     *  dropped must then be used twice as often again before it is
+     *  rebuilt, so that a working set larger than my budget does not
+     *  rebuild keystreams on every use. */
+    private void trim() {
+        Iterator<Entry> entries = _entries.values().iterator();
+        while (entries.hasNext()
+               && (_bytes > _budget || _entries.size() > MAX_ENTRIES)) {
+            Entry entry = entries.next();
+            if (entry.keystream != null && _bytes > _budget) {
+                _bytes -= entry.keystream.bytes();
+                entry.keystream = null;
+                entry.uses = 0;
+                entry.threshold = (int) Math.min(2L * entry.threshold,
+                                                 Integer.MAX_VALUE);
+            }
+            if (_entries.size() > MAX_ENTRIES) {
+                if (entry.keystream != null) {
+                    _bytes -= entry.keystream.bytes();
+                }
+                entries.remove();
+            }
+        }
+    }
+
+    /** What I know of one setting. */
+    private static class Entry {
+        /** The setting's keystream, or null if not built. */
+        private Keystream keystream;
+        /** Number of uses since the keystream was last dropped. */
+        private int uses;
+        /** Number of uses at which to build the keystream. */
+        private int threshold = WARM_UP;
+        /** True iff some thread is building the keystream. */
+        private boolean building;
+    }
+
+    /** Number of uses of a setting before its keystream is first built. */
+    private static final int WARM_UP = 2;
+
+    /** Most settings remembered, with or without a keystream. */
+    private static final int MAX_ENTRIES = 1 << 16;
+
+    /** Most bytes of keystreams held. */
+    private final long _budget;
+
+    /** Bytes of keystreams held. */
+    private long _bytes;
+
+    /** Entries by setting, least recently used first. */
+    private final LinkedHashMap<CompiledSetting, Entry> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+}
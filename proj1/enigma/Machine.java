@@ -1,12 +1,22 @@
 package enigma;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static enigma.EnigmaException.*;
 
 
-/** Class that represents a complete enigma machine.
+/** Class that represents a complete enigma machine.  A machine keeps its
+ *  rotor settings in an array of its own and uses only the immutable
+ *  Wirings of its rotors, so any number of machines built from the same
+ *  rotors may run concurrently, each on its own thread.
  *  @author Daniel del Carpio
  */
 class Machine {
@@ -23,11 +33,65 @@ class Machine {
     /** ArrayList of rotors in config file. */
     private ArrayList<Rotor> _allRotors;
 
+    /** Index of _allRotors by name. */
+    private final RotorRegistry _registry;
+
     /** Current array of rotors used in setting line. */
     private Rotor[] _currentRotors;
 
-    /** _plugboard permutation used. */
-    private Permutation _plugBoard;
+    /** _plugboard permutation used, as a table: _plugs[i] is the index
+     *  that the plugboard maps index I to. */
+    private int[] _plugs;
+
+    /** _settings[i] is the current setting of _currentRotors[i]. */
+    private int[] _settings;
+
+    /** _forward[i][s] is the forward table of _currentRotors[i] at
+     *  setting S. */
+    private int[][][] _forward;
+
+    /** _backward[i][s] is the backward table of _currentRotors[i] at
+     *  setting S. */
+    private int[][][] _backward;
+
+    /** _notchMaps[i] is the notch map of _currentRotors[i], or an
+     *  all-false map if that rotor has no notches. */
+    private boolean[][] _notchMaps;
+
+    /** _toNotch[s] is the number of steps the rightmost rotor must take
+     *  from setting S to reach one of its notches, or Integer.MAX_VALUE
+     *  if it has none. */
+    private int[] _toNotch;
+
+    /** Bit #i of _notched is set iff the rotor in slot I has a pawl and is
+     *  at one of its notches. */
+    private long _notched;
+
+    /** True iff I convert through _core rather than rotor by rotor. */
+    private boolean _compiled;
+
+    /** In compiled mode, rotors in slots _split and up are applied one by
+     *  one; the others are folded into _core.  _split is the slot of the
+     *  second rightmost rotor, unless that is the reflector. */
+    private int _split;
+
+    /** In compiled mode, the combined substitution performed by the
+     *  rotors in slots 0 .. _split-1, the reflector included. */
+    private int[] _core;
+
+    /** True iff _core no longer reflects the current rotor settings. */
+    private boolean _coreStale = true;
+
+    /** Source of keystreams for the settings given to apply, or null. */
+    private KeystreamCache _keystreams;
+
+    /** If not null, I convert by looking up characters in the table of
+     *  this keystream, and _settings hold the state at its start. */
+    private Keystream _keystream;
+
+    /** Offset in the table of _keystream of the row for the next
+     *  character converted. */
+    private int _keyBase;
 
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
@@ -35,11 +99,49 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        if (numRotors > MAX_SLOTS) {
+            throw error("at most %d rotor slots are allowed", MAX_SLOTS);
+        }
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
         _allRotors = new ArrayList<Rotor>(allRotors);
-        _plugBoard = null;
+        _registry = new RotorRegistry(_allRotors);
+        _plugs = null;
+    }
+
+    /** A new machine with the same configuration, rotors, plugboard, mode
+     *  and rotor settings as OTHER.  The two machines share no mutable
+     *  state, so each may then be advanced independently. */
+    private Machine(Machine other) {
+        _alphabet = other._alphabet;
+        _numRotors = other._numRotors;
+        _pawls = other._pawls;
+        _allRotors = other._allRotors;
+        _registry = other._registry;
+        _currentRotors = other._currentRotors;
+        if (other._plugs != null) {
+            _plugs = other._plugs.clone();
+        }
+        _forward = other._forward;
+        _backward = other._backward;
+        _notchMaps = other._notchMaps;
+        _toNotch = other._toNotch;
+        _notched = other._notched;
+        _split = other._split;
+        _compiled = other._compiled;
+        _keystreams = other._keystreams;
+        _keystream = other._keystream;
+        _keyBase = other._keyBase;
+        if (other._settings != null) {
+            _settings = other._settings.clone();
+        }
+    }
+
+    /** Return a copy of me with the same configuration and state.  See
+     *  Machine(Machine). */
+    Machine copy() {
+        return new Machine(this);
     }
     /** Return the number of rotor slots I have. */
     int numRotors() {
@@ -52,59 +154,45 @@ class Machine {
     }
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
-     *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  available rotors (ROTORS[0] names the reflector), matching names
+     *  ignoring case.  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
-        int rotorcheck = 0;
-
-        for (int i = 0; i < rotors.length; i += 1) {
-            boolean inserted = false;
-            for (int j = 0; j < rotorcheck; j += 1) {
-                if (rotors[i].equals(_currentRotors[j].name())) {
-                    throw new EnigmaException("Using more than 1 "
-                            + _currentRotors[j]);
-                }
-            }
-        }
+        Rotor[] found = new Rotor[rotors.length];
         for (int i = 0; i < rotors.length; i += 1) {
-            for (Rotor checkName : _allRotors) {
-                String rotorName = rotors[i].toUpperCase();
-                String check = checkName.name().toUpperCase();
-                if (rotorName.equals(check)) {
-                    rotorcheck += 1;
-                }
+            found[i] = _registry.find(rotors[i]);
+            if (found[i] == null) {
+                throw new EnigmaException("Rotors Not Named Correctly.");
             }
         }
-        if (rotorcheck != rotors.length) {
-            throw new EnigmaException("Rotors Not Named Correctly.");
-        }
-
+        insertRotors(found);
+    }
 
-        String reflector = rotors[0];
-        Rotor nullRotor = null;
-        for (Rotor rotor : _allRotors) {
-            if (rotor.name().equals(reflector)) {
-                nullRotor = rotor;
-            }
+    /** Set my rotor slots to ROTORS, which must be among my available
+     *  rotors (ROTORS[0] is the reflector).  Initially, all rotors are set
+     *  at their 0 setting.  If ROTORS are the rotors I already have, only
+     *  their settings are reset.  ROTORS is not modified. */
+    void insertRotors(Rotor[] rotors) {
+        checkRotors(rotors);
+        _keystream = null;
+        if (_currentRotors != null && Arrays.equals(_currentRotors, rotors)) {
+            Arrays.fill(_settings, 0);
+            refreshNotched();
+            _coreStale = true;
+            return;
         }
-        if (!nullRotor.reflecting()) {
+        _currentRotors = rotors.clone();
+        buildTables();
+    }
+
+    /** Check that ROTORS may fill my slots, as for insertRotors. */
+    void checkRotors(Rotor[] rotors) {
+        if (!rotors[0].reflecting()) {
             throw new EnigmaException("The first rotor is not a reflector"
                     + ", and it must be.");
         }
-        _currentRotors = new Rotor[rotors.length];
-        for (int i = 0; i < rotors.length; i += 1) {
-            for (Rotor r : _allRotors) {
-                String temp = rotors[i].toUpperCase();
-                String temp2 = r.name().toUpperCase();
-                if (temp.equals(temp2)) {
-                    _currentRotors[i] = r;
-                }
-            }
-        }
-
         int count = 0;
-        for (int i = 0; i < _currentRotors.length; i += 1) {
-            if (_currentRotors[i].rotates()) {
+        for (Rotor r : rotors) {
+            if (r.rotates()) {
                 count += 1;
             }
         }
@@ -113,110 +201,617 @@ class Machine {
         }
     }
 
+    /** Build the tables of _currentRotors, all at setting 0. */
+    private void buildTables() {
+        int n = _alphabet.size();
+        int last = _currentRotors.length - 1;
+        boolean[] none = new boolean[n];
+        _settings = new int[_currentRotors.length];
+        _forward = new int[_currentRotors.length][n][];
+        _backward = new int[_currentRotors.length][n][];
+        _notchMaps = new boolean[_currentRotors.length][];
+        for (int i = 0; i <= last; i += 1) {
+            Wiring w = _currentRotors[i].wiring();
+            for (int s = 0; s < n; s += 1) {
+                _forward[i][s] = w.forwardTable(s);
+                _backward[i][s] = w.backwardTable(s);
+            }
+            boolean[] map = w.notchMap();
+            _notchMaps[i] = map == null ? none : map;
+        }
+        _toNotch = new int[n];
+        int next = Integer.MAX_VALUE;
+        for (int k = 2 * n - 1; k >= 0; k -= 1) {
+            if (_notchMaps[last][k % n]) {
+                next = k;
+            }
+            if (k < n) {
+                _toNotch[k] = next == Integer.MAX_VALUE ? next : next - k;
+            }
+        }
+        _split = Math.max(last - 1, 1);
+        refreshNotched();
+        _coreStale = true;
+    }
+
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        Rotor rotor;
+        _keystream = null;
         int length = setting.length();
         int before = numRotors() - 1;
-        for (int i = before; i >= 1; i -= 1){
-            rotor = _currentRotors[i];
+        for (int i = before; i >= 1; i -= 1) {
             char temp = setting.charAt(length - 1);
-            rotor.set(temp);
+            _settings[i] = _alphabet.toInt(temp);
             length -= 1;
         }
+        refreshNotched();
+        _coreStale = true;
     }
 
+    /** Set my rotors to SETTINGS, where SETTINGS[k] is the setting, as an
+     *  alphabet index, of the rotor in slot K + 1 (the reflector is not
+     *  included), so that SETTINGS has numRotors()-1 elements. */
+    void setRotors(int[] settings) {
+        _keystream = null;
+        System.arraycopy(settings, 0, _settings, 1, numRotors() - 1);
+        refreshNotched();
+        _coreStale = true;
+    }
+
+    /** Return the current setting of the rotor in slot SLOT, where slot 0
+     *  holds the reflector.  My state is unchanged: while I convert
+     *  through a keystream, _settings still hold my start settings, so the
+     *  current one is found on a copy. */
+    int setting(int slot) {
+        if (_keystream == null) {
+            return _settings[slot];
+        }
+        Machine m = copy();
+        m.detachKeystream();
+        return m._settings[slot];
+    }
+
+
+    /** Set my rotors, rotor settings and plugboard to those of SETTING,
+     *  which must be for my configuration.  When SETTING uses the rotors I
+     *  already have, this costs a few array copies. */
+    void apply(CompiledSetting setting) {
+        insertRotors(setting.rotors());
+        setRotors(setting.positions());
+        int[] plugs = setting.plugs();
+        if (_plugs == null || _plugs.length != plugs.length) {
+            _plugs = new int[plugs.length];
+        }
+        System.arraycopy(plugs, 0, _plugs, 0, plugs.length);
+        if (_keystreams != null) {
+            _keystream = _keystreams.get(setting, this);
+            _keyBase = 0;
+        }
+    }
+
+    /** Use CACHE, if not null, for the keystreams of the settings given to
+     *  apply. */
+    void setKeystreamCache(KeystreamCache cache) {
+        _keystreams = cache;
+    }
+
+    /** Return my keystream from my current state, or null if it would take
+     *  more than MAXBYTES bytes or my alphabet has more than 256
+     *  characters.  My own state is unchanged. */
+    Keystream keystream(long maxBytes) {
+        int n = _alphabet.size();
+        int first = _settings.length - numPawls();
+        long states = 1, limit = Math.min(maxBytes, Integer.MAX_VALUE - 8);
+        for (int i = first; i < _settings.length; i += 1) {
+            states *= n;
+            if (states * n > limit) {
+                return null;
+            }
+        }
+        if (n > BYTE_ALPHABET_LIMIT) {
+            return null;
+        }
+        Machine m = copy();
+        m.detachKeystream();
+        int[] seen = new int[(int) states];
+        Arrays.fill(seen, -1);
+        byte[] table = new byte[(int) states * n];
+        for (int k = 0; true; k += 1) {
+            m.advanceRotors();
+            int state = 0;
+            for (int i = first; i < _settings.length; i += 1) {
+                state = state * n + m._settings[i];
+            }
+            if (seen[state] >= 0) {
+                return new Keystream(Arrays.copyOf(table, k * n), n, k,
+                                     seen[state]);
+            }
+            seen[state] = k;
+            for (int c = 0; c < n; c += 1) {
+                table[k * n + c] = (byte) m.substitute(c);
+            }
+        }
+    }
+
+    /** Stop converting through _keystream, if I am, bringing _settings up
+     *  to date. */
+    private void detachKeystream() {
+        if (_keystream != null) {
+            long done = _keyBase / _alphabet.size();
+            _keystream = null;
+            skip(done);
+        }
+    }
+
+    /** Most rotor slots a machine may have, one per bit of _notched. */
+    static final int MAX_SLOTS = Long.SIZE;
+
+    /** Largest alphabet whose indices fit in a byte, as in keystreams,
+     *  the --mmap mode of Main and the packed scans of CribScanner. */
+    static final int BYTE_ALPHABET_LIMIT = 256;
+
+    /** Return the index of my available rotors by name. */
+    RotorRegistry registry() {
+        return _registry;
+    }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
-        _plugBoard = plugboard;
+        detachKeystream();
+        if (_plugs == null || _plugs.length != plugboard.size()) {
+            _plugs = new int[plugboard.size()];
+        }
+        for (int i = 0; i < _plugs.length; i += 1) {
+            _plugs[i] = plugboard.permute(i);
+        }
+    }
+
+    /** Toggle the plug between indices A and B on my plugboard, in place:
+     *  if A and B are connected, disconnect them; otherwise disconnect
+     *  each from its current partner, if any, and connect them.  The
+     *  plugboard must be an involution, as a real one is. */
+    void swapPlugs(int a, int b) {
+        detachKeystream();
+        swapPlugs(_plugs, a, b);
+    }
+
+    /** Toggle the plug between A and B in the involution PLUGS, as for
+     *  swapPlugs(int, int). */
+    static void swapPlugs(int[] plugs, int a, int b) {
+        int pa = plugs[a], pb = plugs[b];
+        if (a == b) {
+            return;
+        } else if (pa == b) {
+            plugs[a] = a;
+            plugs[b] = b;
+        } else {
+            plugs[pa] = pa;
+            plugs[pb] = pb;
+            plugs[a] = b;
+            plugs[b] = a;
+        }
+    }
+
+    /** Set whether I run in compiled mode to COMPILED.  In compiled mode,
+     *  the reflector and every rotor to the left of the rightmost one are
+     *  folded into a single substitution table that is rebuilt only when
+     *  one of those rotors changes setting. */
+    void setCompiled(boolean compiled) {
+        _compiled = compiled;
+        _coreStale = true;
+    }
+
+    /** Return true iff I am in compiled mode. */
+    boolean compiled() {
+        return _compiled;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        _currentRotors[_currentRotors.length - 1].advance();
-        int index = _plugBoard.permute(c);
-        index = _currentRotors[_currentRotors.length - 1].convertForward(index);
-        boolean empty = false;
-
-        for (int i = _currentRotors.length - 2; i >= 0; i -= 1) {
-            Rotor r = _currentRotors[i];
-            int count = 0;
-            if (_currentRotors[i + 1].atNotch()) {
-                if (i + 1 == numRotors() - 1) {
-                    r.advance();
-                    if (_currentRotors[i].atNotch()) {
-                        count += 1;
-                        _currentRotors[i - 1].advance();
-                    }
-                    count += 1;
-                }
+        Keystream keystream = _keystream;
+        if (keystream != null) {
+            int base = _keyBase;
+            _keyBase = keystream.next(base);
+            return keystream.table()[base + c] & 0xff;
+        }
+        advanceRotors();
+        return substitute(c);
+    }
+
+    /** Convert the LEN alphabet indices starting at IN[INOFF], storing the
+     *  results starting at OUT[OUTOFF] and advancing the machine once per
+     *  index.  The indices are not checked; each must be in the range
+     *  0..alphabet size - 1.  IN and OUT may be the same array. */
+    void convert(int[] in, int inOff, int[] out, int outOff, int len) {
+        if (_keystream != null) {
+            byte[] table = _keystream.table();
+            int base = _keyBase;
+            for (int k = 0; k < len; k += 1) {
+                out[outOff + k] = table[base + in[inOff + k]] & 0xff;
+                base = _keystream.next(base);
             }
-            int prev = numRotors() - 1;
-            if (((i) != prev)) {
-                if (r.rotates()) {
-                    int[] arr = r.getNotchesArr();
-                    for (int k = 0; k < arr.length; k++) {
-                        int cur = arr[k];
-                        int wrapped = r.permutation().wrap((r.setting()));
-                        if ('A' + wrapped == cur) {
-                            empty = true;
-                        }
-                    }
-                    if (empty) {
-                        if (count == 0 && _currentRotors[i - 1].rotates()) {
-                            r.advance();
-                            _currentRotors[i - 1].advance();
-                            index = r.convertForward(index);
-                            index = _currentRotors[i - 1].convertForward(index);
-                            count += 1;
-                            i -= 1;
-                        }
-                    } else if (empty) {
-                        index = r.convertForward(index);
-                    } else {
-                        count++;
-                        index = r.convertForward(index);
-                    }
-                }
+            _keyBase = base;
+            return;
+        }
+        for (int k = 0; k < len; k += 1) {
+            advanceRotors();
+            out[outOff + k] = substitute(in[inOff + k]);
+        }
+    }
+
+    /** Convert the LEN alphabet indices starting at IN[INOFF], storing the
+     *  results starting at OUT[OUTOFF] and advancing the machine once per
+     *  index.  Indices are unsigned bytes, so my alphabet may have at most
+     *  256 characters, and are not checked.  IN and OUT may be the same
+     *  array. */
+    void convert(byte[] in, int inOff, byte[] out, int outOff, int len) {
+        if (_keystream != null) {
+            byte[] table = _keystream.table();
+            int base = _keyBase;
+            for (int k = 0; k < len; k += 1) {
+                out[outOff + k] = table[base + (in[inOff + k] & 0xff)];
+                base = _keystream.next(base);
+            }
+            _keyBase = base;
+            return;
+        }
+        for (int k = 0; k < len; k += 1) {
+            advanceRotors();
+            out[outOff + k] = (byte) substitute(in[inOff + k] & 0xff);
+        }
+    }
+
+    /** Convert the LEN characters starting at IN[INOFF], storing the
+     *  results starting at OUT[OUTOFF] and advancing the machine once per
+     *  character.  Unlike convert(String), every character must be in my
+     *  alphabet; they are not checked.  IN and OUT may be the same
+     *  array. */
+    void convert(char[] in, int inOff, char[] out, int outOff, int len) {
+        Alphabet alpha = _alphabet;
+        if (_keystream != null) {
+            byte[] table = _keystream.table();
+            int base = _keyBase;
+            for (int k = 0; k < len; k += 1) {
+                out[outOff + k] = alpha.toChar(
+                    table[base + alpha.toInt(in[inOff + k])] & 0xff);
+                base = _keystream.next(base);
+            }
+            _keyBase = base;
+            return;
+        }
+        for (int k = 0; k < len; k += 1) {
+            advanceRotors();
+            out[outOff + k] =
+                alpha.toChar(substitute(alpha.toInt(in[inOff + k])));
+        }
+    }
+
+    /** Convert the LEN alphabet indices starting at IN[INOFF] into OUT
+     *  starting at OUTOFF, exactly as convert(int[], int, int[], int, int)
+     *  would, but splitting the block into chunks that are converted in
+     *  parallel, each from its own skipped-ahead copy of my state.  IN
+     *  and OUT must not overlap unless they are the same range. */
+    void convertParallel(int[] in, int inOff, int[] out, int outOff,
+                         int len) {
+        convertParallel((m, from, size) ->
+                        m.convert(in, inOff + from, out, outOff + from, size),
+                        len);
+    }
+
+    /** As for convertParallel(int[], int, int[], int, int), but for the
+     *  byte form of convert. */
+    void convertParallel(byte[] in, int inOff, byte[] out, int outOff,
+                         int len) {
+        convertParallel((m, from, size) ->
+                        m.convert(in, inOff + from, out, outOff + from, size),
+                        len);
+    }
+
+    /** As for convertParallel(int[], int, int[], int, int), but for the
+     *  char form of convert. */
+    void convertParallel(char[] in, int inOff, char[] out, int outOff,
+                         int len) {
+        convertParallel((m, from, size) ->
+                        m.convert(in, inOff + from, out, outOff + from, size),
+                        len);
+    }
+
+    /** Convert the LEN characters of BLOCK in parallel, leaving me in the
+     *  state I would have after converting them sequentially. */
+    private void convertParallel(Block block, int len) {
+        ForkJoinPool.commonPool().invoke(
+            new ParallelConversion(copy(), block, 0, len));
+        skip(len);
+    }
+
+    /** Size in characters of the largest chunk that convertParallel will
+     *  convert without splitting it further. */
+    static final int PARALLEL_CHUNK = 1 << 16;
+
+    /** A block of characters held by one of the bulk convert methods. */
+    private interface Block {
+        /** Convert the LEN characters starting at offset FROM of the block
+         *  using M. */
+        void convert(Machine m, int from, int len);
+    }
+
+    /** A ForkJoin task that converts part of a Block. */
+    private static class ParallelConversion extends RecursiveAction {
+
+        /** A task that converts characters LO to HI of BLOCK using
+         *  MACHINE, which is in the state for character LO and is owned
+         *  by this task. */
+        ParallelConversion(Machine machine, Block block, int lo, int hi) {
+            _machine = machine;
+            _block = block;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= PARALLEL_CHUNK) {
+                _block.convert(_machine, _lo, _hi - _lo);
+                return;
+            }
+            int mid = (_lo + _hi) >>> 1;
+            Machine right = _machine.copy();
+            right.skip(mid - _lo);
+            invokeAll(new ParallelConversion(_machine, _block, _lo, mid),
+                      new ParallelConversion(right, _block, mid, _hi));
+        }
+
+        /** Machine positioned at character _lo. */
+        private final Machine _machine;
+        /** The block being converted. */
+        private final Block _block;
+        /** Range of characters of _block converted by this task. */
+        private final int _lo, _hi;
+    }
+
+    /** Advance the machine by one keystroke, as convert(int) does, and
+     *  then store in TABLE the conversion of every index at the new
+     *  settings: TABLE[c] is what convert(c) would have returned.  If
+     *  WITHPLUGBOARD is false, the plugboard is left out, so TABLE holds
+     *  the substitution of the rotors (the scrambler) alone. */
+    void nextTable(int[] table, boolean withPlugboard) {
+        detachKeystream();
+        advanceRotors();
+        table(table, 0, withPlugboard);
+    }
+
+    /** Store in TABLE[OFF .. OFF+N-1], where N is the size of my alphabet,
+     *  the conversion of every index at my current settings, without
+     *  advancing my rotors.  WITHPLUGBOARD is as for nextTable. */
+    void table(int[] table, int off, boolean withPlugboard) {
+        detachKeystream();
+        int n = _alphabet.size();
+        for (int c = 0; c < n; c += 1) {
+            table[off + c] = withPlugboard ? substitute(c) : scramble(c);
+        }
+    }
+
+    /** Return the conversion of index C through the plugboard and rotors
+     *  at their current settings, without advancing them. */
+    private int substitute(int c) {
+        return _plugs[scramble(_plugs[c])];
+    }
+
+    /** Return the conversion of index C through the rotors alone at their
+     *  current settings. */
+    private int scramble(int c) {
+        int last = _currentRotors.length - 1;
+        if (_compiled) {
+            if (_coreStale) {
+                buildCore();
+            }
+            int[] settings = _settings;
+            int index = c;
+            for (int i = last; i >= _split; i -= 1) {
+                index = _forward[i][settings[i]][index];
             }
-            if (!empty && !r.atNotch() && i == 3 && count == 0)  {
-                index = r.convertForward(index);
-            } else if ((!r.rotates()) || i == 0) {
-                index = r.convertForward(index);
+            index = _core[index];
+            for (int i = _split; i <= last; i += 1) {
+                index = _backward[i][settings[i]][index];
             }
+            return index;
         }
 
-        for (int i = 1; i < _currentRotors.length; i++) {
-            Rotor r = _currentRotors[i];
-            index = r.convertBackward(index);
+        int index = c;
+        for (int i = last; i >= 0; i -= 1) {
+            index = _forward[i][_settings[i]][index];
+        }
+        for (int i = 1; i <= last; i += 1) {
+            index = _backward[i][_settings[i]][index];
+        }
+        return index;
+    }
+
+    /** Advance the rotating rotors by one keystroke.  The rightmost rotor
+     *  always advances; any other rotor with a pawl advances when the
+     *  rotor to its right is at a notch, or when it is itself at a notch
+     *  and the rotor to its left has a pawl (double stepping).  The set of
+     *  rotors at notches is kept in _notched, so the rotors that move are
+     *  found with a few bit operations, and only they are touched: a
+     *  keystroke costs constant time plus time proportional to the number
+     *  of rotors that move or sit at notches, whatever the number of
+     *  slots. */
+    private void advanceRotors() {
+        int last = _settings.length - 1;
+        int first = _settings.length - _pawls;
+        if (first > last) {
+            return;
+        }
+        long notched = _notched;
+        long lastBit = 1L << last;
+        if ((notched & ~(1L << first)) == 0) {
+            advance(last, lastBit);
+            return;
+        }
+        long middle = lastBit - (1L << first);
+        long moving = ((notched >>> 1) | (notched & ~(1L << first)))
+            & middle;
+        if ((moving & ((1L << _split) - 1)) != 0) {
+            _coreStale = true;
+        }
+        while (moving != 0) {
+            int slot = Long.numberOfTrailingZeros(moving);
+            advance(slot, 1L << slot);
+            moving &= moving - 1;
+        }
+        advance(last, lastBit);
+    }
+
+    /** Advance the rotor in slot SLOT, whose bit in _notched is BIT, by one
+     *  position. */
+    private void advance(int slot, long bit) {
+        int next = _settings[slot] + 1;
+        if (next == _alphabet.size()) {
+            next = 0;
+        }
+        _settings[slot] = next;
+        if (_notchMaps[slot][next]) {
+            _notched |= bit;
+        } else {
+            _notched &= ~bit;
+        }
+    }
+
+    /** Recompute _notched from _settings. */
+    private void refreshNotched() {
+        _notched = 0;
+        for (int i = _settings.length - _pawls; i < _settings.length;
+             i += 1) {
+            if (_notchMaps[i][_settings[i]]) {
+                _notched |= 1L << i;
+            }
         }
-        return _plugBoard.permute(index);
+    }
+
+    /** Advance my rotors as if K characters had been converted, without
+     *  converting anything.  Between notch events only the rightmost rotor
+     *  moves, so each such stretch is skipped in one step, and single
+     *  keystrokes are simulated only where another rotor moves.  The cost
+     *  is thus proportional to the number of times the rightmost rotor
+     *  passes a notch rather than to K, and the result is identical to
+     *  converting K characters one at a time, double steps included. */
+    void skip(long k) {
+        if (_keystream != null) {
+            _keyBase = _keystream.advance(_keyBase, k);
+            return;
+        }
+        int last = _settings.length - 1;
+        int first = _settings.length - numPawls();
+        if (first > last) {
+            return;
+        }
+        int n = _alphabet.size();
+        long middle = first < last ? (1L << last) - (1L << (first + 1)) : 0;
+        while (k > 0) {
+            boolean stable = (_notched & middle) == 0;
+            int run = stable ? _toNotch[_settings[last]] : 0;
+            if (run >= k) {
+                _settings[last] = (int) ((_settings[last] + k % n) % n);
+                break;
+            } else if (run > 0) {
+                _settings[last] = (_settings[last] + run) % n;
+                k -= run;
+                refreshNotched();
+            } else {
+                advanceRotors();
+                k -= 1;
+            }
+        }
+        refreshNotched();
+    }
+
+    /** Recompute _core from the current settings of the rotors in slots
+     *  0 .. _split-1. */
+    private void buildCore() {
+        int n = _alphabet.size();
+        if (_core == null || _core.length != n) {
+            _core = new int[n];
+        }
+        for (int p = 0; p < n; p += 1) {
+            int index = p;
+            for (int i = _split - 1; i >= 0; i -= 1) {
+                index = _forward[i][_settings[i]][index];
+            }
+            for (int i = 1; i < _split; i += 1) {
+                index = _backward[i][_settings[i]][index];
+            }
+            _core[p] = index;
+        }
+        _coreStale = false;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        int conv;
-        char[] imsg = msg.toCharArray();
-        String result = "";
-        for (int i = 0; i < imsg.length; i++) {
-            if (imsg[i] == ' ') {
-                result += " ";
-                continue;
+        CharBuffer out = CharBuffer.allocate(msg.length());
+        convert(CharBuffer.wrap(msg), out);
+        out.flip();
+        return out.toString();
+    }
+
+    /** Convert characters from IN into OUT until IN is exhausted or OUT
+     *  is full, updating the state of the rotors accordingly.  As for
+     *  convert(String), blanks are copied unchanged and other characters
+     *  that are not in my alphabet are dropped.  Both buffers' positions
+     *  are advanced past the characters consumed and produced. */
+    void convert(CharBuffer in, CharBuffer out) {
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            char[] src = in.array(), dst = out.array();
+            int i = in.arrayOffset() + in.position(),
+                end = in.arrayOffset() + in.limit();
+            int j = out.arrayOffset() + out.position(),
+                cap = out.arrayOffset() + out.limit();
+            for (; i < end && j < cap; i += 1) {
+                char c = src[i];
+                if (c == ' ') {
+                    dst[j++] = c;
+                } else if (_alphabet.contains(c)) {
+                    dst[j++] = _alphabet.toChar(convert(_alphabet.toInt(c)));
+                }
             }
-            if (!(_alphabet.contains(imsg[i]))) {
-                continue;
+            in.position(i - in.arrayOffset());
+            out.position(j - out.arrayOffset());
+            return;
+        }
+        while (in.hasRemaining() && out.hasRemaining()) {
+            char c = in.get();
+            if (c == ' ') {
+                out.put(c);
+            } else if (_alphabet.contains(c)) {
+                out.put(_alphabet.toChar(convert(_alphabet.toInt(c))));
             }
-            conv = _alphabet.toInt(imsg[i]);
-            imsg[i] = _alphabet.toChar((convert(conv)));
-            result += String.valueOf(imsg[i]);
         }
-        return result;
+    }
 
+    /** Convert all remaining characters of IN and write the results to
+     *  OUT, as for convert(CharBuffer, CharBuffer).  Uses a fixed amount of
+     *  memory regardless of the length of IN; OUT is flushed at the end. */
+    void convert(Reader in, Writer out) {
+        CharBuffer src = CharBuffer.allocate(STREAM_BUFFER_SIZE);
+        CharBuffer dst = CharBuffer.allocate(STREAM_BUFFER_SIZE);
+        try {
+            while (in.read(src) != -1) {
+                src.flip();
+                convert(src, dst);
+                out.write(dst.array(), 0, dst.position());
+                dst.clear();
+                src.compact();
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw error("I/O error while converting: %s", excp.getMessage());
+        }
     }
+
+    /** Size in characters of the buffers used by convert(Reader, Writer). */
+    static final int STREAM_BUFFER_SIZE = 1 << 16;
 }
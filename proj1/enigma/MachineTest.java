@@ -4,6 +4,8 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
 
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -21,11 +23,18 @@ public class MachineTest {
     public Timeout globalTimeout = Timeout.seconds(5);
     /* ***** TESTING UTILITIES ***** */
     private Machine machine;
+    private ArrayList<Rotor> rotors;
 
     /** Creates a default machine */
     public MachineTest() {
-        ArrayList<Rotor> rotors;
-        rotors = new ArrayList<>();
+        rotors = navalRotors();
+        machine = new Machine(UPPER, 5, 3, rotors);
+    }
+
+    /** Return new copies of the naval rotors I through VIII, Beta, Gamma,
+     *  B and C. */
+    private static ArrayList<Rotor> navalRotors() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
         rotors.add(new MovingRotor("I",
                 new Permutation(NAVALA.get("I"), UPPER), "Q"));
         rotors.add(new MovingRotor("II",
@@ -50,9 +59,13 @@ public class MachineTest {
                 new Permutation(NAVALA.get("B"), UPPER)));
         rotors.add(new Reflector("C",
                 new Permutation(NAVALA.get("C"), UPPER)));
+        return rotors;
+    }
 
-        machine = new Machine(UPPER, 5, 3, rotors);
-
+    /** Return a new five-slot, three-pawl machine over the naval
+     *  rotors, with no rotors inserted. */
+    private static Machine navalMachine() {
+        return new Machine(UPPER, 5, 3, navalRotors());
     }
 
 
@@ -60,16 +73,14 @@ public class MachineTest {
 
     @Test
     public void checkVar() {
-        MachineTest test1 = new MachineTest();
-        Machine m = test1.machine;
+        Machine m = navalMachine();
         assertEquals(5, machine.numRotors());
         assertEquals(3, machine.numPawls());
     }
 
     @Test
     public void checkExample() {
-        MachineTest t1 = new MachineTest();
-        Machine navy = t1.machine;
+        Machine navy = navalMachine();
         navy.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
         navy.setRotors("AXLE");
         navy.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
@@ -80,4 +91,232 @@ public class MachineTest {
 
     }
 
+    @Test
+    public void checkDoubleStep() {
+        Machine navy = navalMachine();
+        navy.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        navy.setRotors("AADU");
+        navy.setPlugboard(new Permutation("", UPPER));
+        assertEquals("EQIBM", navy.convert("AAAAA"));
+    }
+
+    @Test
+    public void checkCompiled() {
+        Machine slow = navalMachine();
+        Machine fast = navalMachine();
+        for (Machine m : new Machine[] {slow, fast}) {
+            m.insertRotors(new String[] {"C", "Gamma", "VI", "VII", "VIII"});
+            m.setRotors("ZQDM");
+            m.setPlugboard(new Permutation("(AB) (QR) (YZ)", UPPER));
+        }
+        fast.setCompiled(true);
+        for (int i = 0; i < 2000; i += 1) {
+            assertEquals(slow.convert(i % 26), fast.convert(i % 26));
+        }
+    }
+
+    @Test
+    public void checkStreaming() {
+        Machine strings = navalMachine();
+        Machine streams = navalMachine();
+        for (Machine m : new Machine[] {strings, streams}) {
+            m.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+            m.setRotors("AXLE");
+            m.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+        }
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 3 * Machine.STREAM_BUFFER_SIZE; i += 1) {
+            msg.append(i % 7 == 0 ? ' ' : (char) ('A' + i % 26));
+        }
+        StringWriter out = new StringWriter();
+        streams.convert(new StringReader(msg.toString()), out);
+        assertEquals(strings.convert(msg.toString()), out.toString());
+    }
+
+    @Test
+    public void checkBulk() {
+        Machine[] machines = new Machine[4];
+        for (int k = 0; k < machines.length; k += 1) {
+            machines[k] = navalMachine();
+            machines[k].insertRotors(new String[] {"B", "Beta", "I", "II",
+                                                   "III"});
+            machines[k].setRotors("AADU");
+            machines[k].setPlugboard(new Permutation("(AQ) (MZ)", UPPER));
+        }
+        int n = 1000;
+        int[] ints = new int[n + 3];
+        byte[] bytes = new byte[n];
+        char[] chars = new char[n];
+        for (int i = 0; i < n; i += 1) {
+            ints[i + 3] = (i * 7) % 26;
+            bytes[i] = (byte) ((i * 7) % 26);
+            chars[i] = UPPER_STRING.charAt((i * 7) % 26);
+        }
+        machines[0].convert(ints, 3, ints, 0, n);
+        machines[1].convert(bytes, 0, bytes, 0, n);
+        machines[2].convert(chars, 0, chars, 0, n);
+        for (int i = 0; i < n; i += 1) {
+            int expected = machines[3].convert((i * 7) % 26);
+            assertEquals(expected, ints[i]);
+            assertEquals(expected, bytes[i]);
+            assertEquals(UPPER_STRING.charAt(expected), chars[i]);
+        }
+    }
+
+    @Test
+    public void checkSkip() {
+        for (int k : new int[] {0, 1, 25, 26, 27, 700, 17000, 123457}) {
+            Machine stepped = navalMachine();
+            Machine skipped = navalMachine();
+            for (Machine m : new Machine[] {stepped, skipped}) {
+                m.insertRotors(new String[] {"B", "Beta", "VI", "IV", "II"});
+                m.setRotors("AIJD");
+                m.setPlugboard(new Permutation("", UPPER));
+            }
+            for (int i = 0; i < k; i += 1) {
+                stepped.convert(0);
+            }
+            skipped.skip(k);
+            for (int slot = 0; slot < 5; slot += 1) {
+                assertEquals(msg("skip", "slot %d after %d", slot, k),
+                             stepped.setting(slot), skipped.setting(slot));
+            }
+            assertEquals(stepped.convert(3), skipped.convert(3));
+        }
+    }
+
+    @Test
+    public void checkParallel() {
+        Machine serial = navalMachine();
+        Machine parallel = navalMachine();
+        for (Machine m : new Machine[] {serial, parallel}) {
+            m.insertRotors(new String[] {"C", "Gamma", "VIII", "I", "V"});
+            m.setRotors("QMEY");
+            m.setPlugboard(new Permutation("(AB) (CD)", UPPER));
+        }
+        int n = 10 * Machine.PARALLEL_CHUNK + 17;
+        byte[] a = new byte[n], b = new byte[n];
+        for (int i = 0; i < n; i += 1) {
+            a[i] = b[i] = (byte) (i * 31 % 26);
+        }
+        serial.convert(a, 0, a, 0, n);
+        parallel.convertParallel(b, 0, b, 0, n);
+        assertArrayEquals(a, b);
+        assertEquals(serial.convert(5), parallel.convert(5));
+    }
+
+    @Test
+    public void checkSharedRotors() {
+        Machine first = new Machine(UPPER, 5, 3, rotors);
+        Machine second = new Machine(UPPER, 5, 3, rotors);
+        first.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        second.insertRotors(new String[] {"C", "Gamma", "I", "IV", "III"});
+        first.setRotors("AXLE");
+        second.setRotors("QQQQ");
+        first.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+        second.setPlugboard(new Permutation("", UPPER));
+        String a = "";
+        for (char c : "FROMHISSHOULDERHIAWATHA".toCharArray()) {
+            a += first.convert(String.valueOf(c));
+            second.convert("XYZ");
+        }
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", a);
+    }
+
+    @Test
+    public void checkCompiledSetting() {
+        Machine m = new Machine(UPPER, 5, 3, rotors);
+        RotorRegistry registry = m.registry();
+        assertSame(registry.find("BETA"), registry.find("beta"));
+        assertNull(registry.find("IX"));
+        Rotor[] slots = new Rotor[] {registry.find("b"), registry.find("Beta"),
+            registry.find("iii"), registry.find("IV"), registry.find("I")};
+        int[] plugs = new int[UPPER.size()];
+        for (int i = 0; i < plugs.length; i += 1) {
+            plugs[i] = i;
+        }
+        Machine.swapPlugs(plugs, UPPER.toInt('H'), UPPER.toInt('Q'));
+        Machine.swapPlugs(plugs, UPPER.toInt('E'), UPPER.toInt('X'));
+        Machine.swapPlugs(plugs, UPPER.toInt('I'), UPPER.toInt('P'));
+        Machine.swapPlugs(plugs, UPPER.toInt('T'), UPPER.toInt('R'));
+        Machine.swapPlugs(plugs, UPPER.toInt('B'), UPPER.toInt('Y'));
+        CompiledSetting setting = new CompiledSetting(slots,
+            new int[] {0, 23, 11, 4}, plugs);
+        for (int k = 0; k < 2; k += 1) {
+            m.apply(setting);
+            assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                         m.convert("FROMHISSHOULDERHIAWATHA"));
+        }
+        m.swapPlugs(0, 1);
+        assertEquals(UPPER.toInt('Y'), setting.plugs()[UPPER.toInt('B')]);
+    }
+
+    @Test
+    public void checkKeystream() {
+        Machine plain = new Machine(UPPER, 5, 3, rotors);
+        Machine cached = new Machine(UPPER, 5, 3, rotors);
+        cached.setKeystreamCache(new KeystreamCache(1 << 24));
+        RotorRegistry registry = plain.registry();
+        Rotor[] slots = new Rotor[] {registry.find("C"),
+            registry.find("Gamma"), registry.find("VI"),
+            registry.find("VII"), registry.find("VIII")};
+        int[] plugs = new int[UPPER.size()];
+        for (int i = 0; i < plugs.length; i += 1) {
+            plugs[i] = i;
+        }
+        Machine.swapPlugs(plugs, 0, 25);
+        CompiledSetting setting = new CompiledSetting(slots,
+            new int[] {3, 12, 24, 21}, plugs);
+        plain.apply(setting);
+        cached.apply(setting);
+        cached.apply(setting);
+        int[] in = new int[40000], expected = new int[in.length],
+            actual = new int[in.length];
+        for (int i = 0; i < in.length; i += 1) {
+            in[i] = (i * 7) % UPPER.size();
+        }
+        plain.convert(in, 0, expected, 0, in.length);
+        cached.convert(in, 0, actual, 0, in.length);
+        assertArrayEquals(expected, actual);
+        plain.skip(123456);
+        cached.skip(123456);
+        for (int slot = 1; slot < 5; slot += 1) {
+            assertEquals(plain.setting(slot), cached.setting(slot));
+        }
+        assertEquals(plain.convert(5), cached.convert(5));
+    }
+
+    @Test
+    public void checkManySlots() {
+        Machine m = new Machine(UPPER, 10, 8, rotors);
+        String[] names = {"B", "Beta", "VI", "I", "VII", "II", "VIII", "III",
+                          "IV", "V"};
+        String[] notches = {"", "", "ZM", "Q", "ZM", "E", "ZM", "V", "J",
+                            "Z"};
+        m.insertRotors(names);
+        m.setRotors("AZMQDEYVJ");
+        m.setPlugboard(new Permutation("", UPPER));
+        int[] expected = new int[names.length];
+        for (int slot = 1; slot < names.length; slot += 1) {
+            expected[slot] = m.setting(slot);
+        }
+        for (int k = 0; k < 20000; k += 1) {
+            boolean[] atNotch = new boolean[names.length];
+            for (int slot = 2; slot < names.length; slot += 1) {
+                atNotch[slot] = notches[slot].indexOf(
+                    UPPER.toChar(expected[slot])) >= 0;
+            }
+            for (int slot = 2; slot < names.length; slot += 1) {
+                boolean last = slot == names.length - 1;
+                if (last || atNotch[slot + 1] || (atNotch[slot] && slot > 2)) {
+                    expected[slot] = (expected[slot] + 1) % UPPER.size();
+                }
+            }
+            m.convert(0);
+        }
+        for (int slot = 1; slot < names.length; slot += 1) {
+            assertEquals(expected[slot], m.setting(slot));
+        }
+    }
+
 }
\ No newline at end of file
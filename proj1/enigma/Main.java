@@ -1,14 +1,43 @@
 package enigma;
 
-import java.io.File;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.Reader;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static enigma.EnigmaException.*;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 
 /** Enigma simulator.
  *  @author Daniel del Carpio
@@ -28,13 +57,109 @@ public final class Main {
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private ReadableByteChannel _input;
 
-    /** Source of machine configuration. */
+    /** Contents of the machine configuration file, as read in one piece:
+     *  either text or a ConfigImage. */
+    private byte[] _configBytes;
+
+    /** Source of machine configuration, when it is text. */
     private Scanner _config;
 
+    /** In --compile mode, the file to which to write the configuration
+     *  image, or null if not in --compile mode. */
+    private Path _compiled;
+
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private GroupWriter _output;
+
+    /** The files opened for _input and _output, to be closed at the end;
+     *  the standard input and output are not among them. */
+    private final ArrayList<Closeable> _opened = new ArrayList<>();
+
+    /** Number of letters in the last group of the current output line. */
+    private int _groupCount;
+
+    /** True iff the input and output files are to be memory-mapped. */
+    private boolean _mapped;
+
+    /** True iff settings sections are to be converted concurrently. */
+    private boolean _parallel;
+
+    /** True iff reading, converting and writing are to run as pipelined
+     *  stages on threads of their own. */
+    private boolean _pipelined;
+
+    /** Number of candidate settings to print in --search mode, or 0 if
+     *  not searching. */
+    private int _searchCount;
+
+    /** In --search mode, a file of training text for the NgramModel with
+     *  which the plugboard of each candidate is solved, or null if
+     *  plugboards are not to be solved. */
+    private Path _ngrams;
+
+    /** In --bombe mode, the crib, or null if not in --bombe mode. */
+    private String _crib;
+
+    /** The cycle catalog file written in --catalog mode or read in
+     *  --indicators mode, or null if in neither. */
+    private Path _catalog;
+
+    /** True iff in --indicators mode. */
+    private boolean _indicators;
+
+    /** In --mmap mode, the input and output files. */
+    private Path _inputPath, _outputPath;
+
+    /** In --mmap mode, the output file, the offset in it of the start of
+     *  _outputWindow, and the currently mapped part of it. */
+    private FileChannel _mappedOutput;
+    /** See _mappedOutput. */
+    private long _outputBase;
+    /** See _mappedOutput. */
+    private MappedByteBuffer _outputWindow;
+
+    /** Largest number of ciphertext letters scored in --search mode. */
+    private static final int SEARCH_PREFIX = 150;
+
+    /** Number of hill climbs with which --search solves the plugboard of
+     *  each candidate when given --ngrams. */
+    private static final int SOLVER_RESTARTS = 8;
+
+    /** Most plugs that --search tries when solving a plugboard. */
+    private static final int SOLVER_MAX_PLUGS = 10;
+
+    /** Number of sections per worker thread that --parallel mode holds
+     *  in memory before waiting for the oldest to be printed. */
+    private static final int SECTIONS_PER_THREAD = 4;
+
+    /** Number of input characters after which --parallel mode ends a
+     *  section at the next line break, continuing the settings section
+     *  in a new one. */
+    private static final int SECTION_SIZE = 1 << 16;
+
+    /** Number of chunks passed among the stages of --pipeline mode, and
+     *  capacity of each ring between them.  A power of two. */
+    private static final int PIPELINE_CHUNKS = 8;
+
+    /** Number of input characters a chunk of --pipeline mode holds. */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /** Number of pieces of input a chunk of --pipeline mode holds. */
+    private static final int CHUNK_EVENTS = 1 << 12;
+
+    /** Largest number of bytes of a file mapped at one time. */
+    private static final int MAP_WINDOW = 1 << 28;
+
+    /** Default memory budget in bytes of the keystream cache. */
+    private static final long KEYSTREAM_BUDGET = 64L << 20;
+
+    /** Most compiled settings kept in _settingsCache. */
+    private static final int SETTINGS_CACHE_SIZE = 4096;
+
+    /** Line terminator used in output, as for PrintStream.println. */
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes();
 
 
     /** All rotors from which rotors may be inserted into the machine. */
@@ -43,6 +168,24 @@ public final class Main {
     /** Keeps track of which rotor was added prior when adding rotors. */
     private int _previousAddedRotor = 0;
 
+    /** Compiled settings, by settings-line text, least recently used
+     *  first.  Lookups use the views returned by SettingsLine.key, so
+     *  only a miss copies the text.  Shared by the workers of
+     *  --parallel. */
+    private final Map<SettingsLine.Key, CompiledSetting> _settingsCache =
+        Collections.synchronizedMap(
+            new LinkedHashMap<SettingsLine.Key, CompiledSetting>(16, 0.75f,
+                                                                 true) {
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<SettingsLine.Key, CompiledSetting> eldest) {
+                    return size() > SETTINGS_CACHE_SIZE;
+                }
+            });
+
+    /** Memory budget in bytes of the keystream cache. */
+    private long _keystreamBudget = KEYSTREAM_BUDGET;
+
     /** Accumulation of all rotors to be used from config file. */
     private ArrayList<Rotor> _allRots;
 
@@ -55,7 +198,36 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  The file arguments may be preceded by options.  With --mmap, both
+     *  the input and output files must be given, and they are accessed
+     *  through memory mappings rather than streams.  With --parallel, the
+     *  input is split into its settings sections, which are converted
+     *  concurrently and written in their original order.  With
+     *  --pipeline, reading, converting and writing run concurrently as
+     *  the stages of a pipeline, and the share of the run that each stage
+     *  spent working is printed on the standard error at the end.  With
+     *  --search=N, the input is instead taken as ciphertext, and the N
+     *  most likely settings lines for it are printed, each preceded by
+     *  its score (see RotorSearch).  If --ngrams=FILE is also given, the
+     *  plugboard of each is then solved by hill climbing, scored by the
+     *  bigrams and trigrams of the text in FILE, and appended to its
+     *  settings line (see PlugboardSolver).  With --bombe=CRIB, the input is
+     *  taken as ciphertext whose plaintext begins with CRIB, and the
+     *  settings lines of all Bombe stops are printed (see Bombe).  With
+     *  --catalog=FILE, no messages are read; instead, a catalog of the
+     *  cycle characteristics of every rotor order and start setting of
+     *  the configuration is written to FILE.  With --indicators=FILE, the
+     *  input is taken as a day's six-character message indicators, and
+     *  the settings lines of the entries of catalog FILE that match them
+     *  are printed (see CycleCatalog).  With --compile=IMAGE, no messages
+     *  are read; instead, the configuration is written to IMAGE in binary
+     *  form (see ConfigImage).  Such an image may be given in place of a
+     *  configuration file, and loads without any parsing.  With
+     *  --keystream-cache=BYTES, at most BYTES bytes are used to cache the
+     *  keystreams of settings lines that recur (see KeystreamCache); the
+     *  default is KEYSTREAM_BUDGET, and 0 turns the cache off. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -68,95 +240,892 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int first;
+        for (first = 0; first < args.length; first += 1) {
+            if (args[first].equals("--mmap")) {
+                _mapped = true;
+            } else if (args[first].equals("--parallel")) {
+                _parallel = true;
+            } else if (args[first].equals("--pipeline")) {
+                _pipelined = true;
+            } else if (args[first].startsWith("--search=")) {
+                try {
+                    _searchCount = Integer.parseInt(
+                        args[first].substring("--search=".length()));
+                } catch (NumberFormatException excp) {
+                    throw error("bad option: %s", args[first]);
+                }
+                if (_searchCount <= 0) {
+                    throw error("bad option: %s", args[first]);
+                }
+            } else if (args[first].startsWith("--ngrams=")) {
+                _ngrams = Paths.get(
+                    args[first].substring("--ngrams=".length()));
+            } else if (args[first].startsWith("--bombe=")) {
+                _crib = args[first].substring("--bombe=".length());
+                if (_crib.isEmpty()) {
+                    throw error("bad option: %s", args[first]);
+                }
+            } else if (args[first].startsWith("--catalog=")) {
+                _catalog = Paths.get(
+                    args[first].substring("--catalog=".length()));
+            } else if (args[first].startsWith("--indicators=")) {
+                _catalog = Paths.get(
+                    args[first].substring("--indicators=".length()));
+                _indicators = true;
+            } else if (args[first].startsWith("--keystream-cache=")) {
+                try {
+                    _keystreamBudget = Long.parseLong(args[first].substring(
+                        "--keystream-cache=".length()));
+                } catch (NumberFormatException excp) {
+                    throw error("bad option: %s", args[first]);
+                }
+                if (_keystreamBudget < 0) {
+                    throw error("bad option: %s", args[first]);
+                }
+            } else if (args[first].startsWith("--compile=")) {
+                _compiled = Paths.get(
+                    args[first].substring("--compile=".length()));
+            } else if (args[first].startsWith("--")) {
+                throw error("unknown option: %s", args[first]);
+            } else {
+                break;
+            }
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
-        _config = getInput(args[0]);
-        if (args.length > 1) {
-            _input = getInput(args[1]);
-        } else {
-            _input = new Scanner(System.in);
+        _configBytes = getConfig(args[0]);
+        if (_ngrams != null && _searchCount == 0) {
+            throw error("--ngrams requires --search");
+        }
+        if ((_mapped ? 1 : 0) + (_parallel ? 1 : 0) + (_pipelined ? 1 : 0)
+            > 1) {
+            throw error("--mmap, --parallel and --pipeline cannot be"
+                        + " combined");
+        }
+        if (_mapped) {
+            if (args.length != 3) {
+                throw error("--mmap requires input and output files");
+            }
+            _inputPath = Paths.get(args[1]);
+            _outputPath = Paths.get(args[2]);
+            return;
         }
+        try {
+            if (args.length > 1) {
+                _input = getChannel(args[1]);
+            } else {
+                _input = Channels.newChannel(System.in);
+            }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
-        } else {
-            _output = System.out;
+            if (args.length > 2) {
+                _output = getOutput(args[2]);
+            } else {
+                _output = new GroupWriter(
+                    new FileOutputStream(FileDescriptor.out).getChannel());
+            }
+        } catch (EnigmaException excp) {
+            closeFiles();
+            throw excp;
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return the contents of the file named NAME. */
+    private byte[] getConfig(String name) {
         try {
-            return new Scanner(new File(name));
+            return Files.readAllBytes(Paths.get(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a channel reading from the file named NAME. */
+    private ReadableByteChannel getChannel(String name) {
+        try {
+            FileChannel result = FileChannel.open(Paths.get(name), READ);
+            _opened.add(result);
+            return result;
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a Reader for _input, decoding it in the default charset. */
+    private Reader inputReader() {
+        return Channels.newReader(_input, Charset.defaultCharset().name());
+    }
+
+    /** Return a GroupWriter writing to the file named NAME. */
+    private GroupWriter getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            FileChannel result = FileChannel.open(Paths.get(name), WRITE,
+                                                  CREATE, TRUNCATE_EXISTING);
+            _opened.add(result);
+            return new GroupWriter(result);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** Close the files in _opened.  If any cannot be closed, the rest are
+     *  still closed before the error is reported. */
+    private void closeFiles() {
+        IOException failure = null;
+        for (Closeable file : _opened) {
+            try {
+                file.close();
+            } catch (IOException excp) {
+                failure = excp;
+            }
+        }
+        _opened.clear();
+        if (failure != null) {
+            throw error("could not close file: %s", failure.getMessage());
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
+     *  results to _output.  Whatever has been written to _output is
+     *  flushed, and the input and output files are closed, even if there
+     *  is an error. */
+    void process() {
+        try {
+            processInput();
+        } finally {
+            try {
+                if (_output != null) {
+                    _output.flush();
+                }
+            } finally {
+                closeFiles();
+            }
+        }
+    }
 
+    /** Do the work of process(). */
+    private void processInput() {
+        if (_compiled != null) {
+            readConfig();
+            new ConfigImage(_alphabet, _numRotors, _numPawls, _allRots)
+                .write(_compiled);
+            return;
+        }
+        if (_searchCount > 0) {
+            processSearch();
+            return;
+        }
+        if (_crib != null) {
+            processBombe();
+            return;
+        }
+        if (_catalog != null) {
+            processCatalog();
+            return;
+        }
+        if (_mapped) {
+            processMapped();
+            return;
+        }
+        if (_parallel) {
+            processParallel();
+            return;
+        }
+        if (_pipelined) {
+            processPipelined();
+            return;
+        }
         Machine configMach = readConfig();
-        while (_input.hasNextLine()) {
-            String setting = _input.nextLine();
-            String[] strArr = setting.split(" ");
+        configMach.setCompiled(true);
+        configMach.setKeystreamCache(keystreamCache());
+        CharBuffer converted =
+            CharBuffer.allocate(Machine.STREAM_BUFFER_SIZE);
+        InputTokenizer input = new InputTokenizer(_input);
+        boolean configured = false;
+        for (int kind = input.next(); kind != InputTokenizer.END_OF_INPUT;
+             kind = input.next()) {
+            if (kind == InputTokenizer.SETTINGS) {
+                setUp(configMach, input.settings());
+                configured = true;
+            } else if (kind == InputTokenizer.END_OF_LINE) {
+                _output.endLine();
+            } else if (!configured) {
+                throw error("First line must be settings line.");
+            } else {
+                CharBuffer msg = input.message();
+                while (msg.hasRemaining()) {
+                    configMach.convert(msg, converted);
+                    converted.flip();
+                    _output.groups(converted);
+                    converted.clear();
+                }
+            }
+        }
+    }
 
-            if (!strArr[0].equals("*") && _input.hasNext()) {
-                setting = _input.nextLine();
-                _output.println();
-            } else if (!strArr[0].equals("*")) {
-                throw new EnigmaException("First line must be settings line.");
+    /** Search for the rotor order and settings of the ciphertext in
+     *  _input, using at most SEARCH_PREFIX of its letters, and print the
+     *  best _searchCount candidates to _output. */
+    private void processSearch() {
+        readConfig();
+        int[] ciphertext = new int[SEARCH_PREFIX];
+        int length = 0;
+        Reader input = inputReader();
+        try {
+            for (int c = input.read(); c != -1 && length < SEARCH_PREFIX;
+                 c = input.read()) {
+                char ch = Character.toUpperCase((char) c);
+                if (_alphabet.contains(ch)) {
+                    ciphertext[length] = _alphabet.toInt(ch);
+                    length += 1;
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+        RotorSearch search =
+            new RotorSearch(_alphabet, _numRotors, _numPawls, _allRots);
+        NgramModel model = null;
+        if (_ngrams != null) {
+            try (Reader training = Files.newBufferedReader(_ngrams)) {
+                model = NgramModel.train(_alphabet, training);
+            } catch (IOException excp) {
+                throw error("could not read %s: %s", _ngrams,
+                            excp.getMessage());
+            }
+        }
+        Machine mach = new Machine(_alphabet, _numRotors, _numPawls,
+                                   _allRots);
+        int maxPlugs = Math.min(SOLVER_MAX_PLUGS, _alphabet.size() / 2);
+        for (RotorSearch.Candidate c
+                 : search.search(ciphertext, length, _searchCount)) {
+            String line = String.format("%.6f %s", c.score(), c);
+            if (model != null) {
+                mach.insertRotors(c.rotors());
+                mach.setRotors(c.setting());
+                mach.setPlugboard(new Permutation("", _alphabet));
+                String plugs =
+                    new PlugboardSolver(mach, ciphertext, length, model)
+                    .solve(SOLVER_RESTARTS, maxPlugs, 0).cycles(_alphabet);
+                if (!plugs.isEmpty()) {
+                    line += " " + plugs;
+                }
             }
+            _output.println(line);
+        }
+    }
 
-            setUp(configMach, setting);
+    /** Run a Bombe for _crib at the start of the ciphertext in _input and
+     *  print the settings line of each stop to _output. */
+    private void processBombe() {
+        readConfig();
+        int[] crib = new int[_crib.length()];
+        for (int i = 0; i < crib.length; i += 1) {
+            char ch = Character.toUpperCase(_crib.charAt(i));
+            if (!_alphabet.contains(ch)) {
+                throw error("crib character not in alphabet: %c", ch);
+            }
+            crib[i] = _alphabet.toInt(ch);
+        }
+        int[] ciphertext = new int[crib.length];
+        int length = 0;
+        Reader input = inputReader();
+        try {
+            for (int c = input.read(); c != -1 && length < crib.length;
+                 c = input.read()) {
+                char ch = Character.toUpperCase((char) c);
+                if (_alphabet.contains(ch)) {
+                    ciphertext[length] = _alphabet.toInt(ch);
+                    length += 1;
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+        if (length < crib.length) {
+            throw error("crib is longer than the ciphertext");
+        }
+        Bombe bombe = new Bombe(_alphabet, _numRotors, _numPawls, _allRots,
+                                crib, ciphertext, 0);
+        for (Bombe.Stop stop : bombe.search()) {
+            _output.println(stop.toString());
+        }
+    }
 
-            String mssg = "";
-            while (!_input.hasNext("\\*.*") && _input.hasNextLine()) {
-                if (_input.hasNext("\\*.*")) {
-                    throw new EnigmaException("Improper Format for setting.");
+    /** Write the cycle catalog of the configuration to _catalog, or, in
+     *  --indicators mode, print the entries of catalog _catalog that
+     *  match the indicators in _input. */
+    private void processCatalog() {
+        readConfig();
+        if (!_indicators) {
+            CycleCatalog.write(_catalog, _alphabet, _numRotors, _numPawls,
+                               _allRots);
+            return;
+        }
+        CycleCatalog catalog = new CycleCatalog(_catalog);
+        Alphabet alpha = catalog.alphabet();
+        ArrayList<int[]> indicators = new ArrayList<>();
+        int[] indicator = new int[6];
+        int length = 0;
+        Reader input = inputReader();
+        try {
+            for (int c = input.read(); c != -1; c = input.read()) {
+                char ch = Character.toUpperCase((char) c);
+                if (alpha.contains(ch)) {
+                    indicator[length] = alpha.toInt(ch);
+                    length += 1;
+                    if (length == indicator.length) {
+                        indicators.add(indicator.clone());
+                        length = 0;
+                    }
                 }
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+        long key = CycleCatalog.characteristic(
+            indicators.toArray(new int[0][]), alpha.size());
+        for (String line : catalog.lookup(key)) {
+            _output.println(line);
+        }
+    }
 
-                mssg = _input.nextLine();
-                mssg = mssg.toUpperCase();
-                String[] mssgArr = mssg.split("\\ ");
-                String[] convertedMsgArr = new String[mssgArr.length];
-                for (int i = 0; i < mssgArr.length; i++) {
-                    convertedMsgArr[i] = configMach.convert(mssgArr[i]);
+    /** As for process(), but converting sections of _input on a pool of
+     *  worker threads, one machine per section, and printing the results
+     *  in input order.  A section is a settings section of the input, or
+     *  a part of one ending at the first line break after SECTION_SIZE
+     *  characters; the machine of a later part skips ahead past the
+     *  characters converted in the earlier ones.  At most
+     *  SECTIONS_PER_THREAD sections per thread are held in memory at
+     *  once, so memory is bounded unless a single line is huge. */
+    private void processParallel() {
+        Machine template = readConfig();
+        template.setCompiled(true);
+        template.setKeystreamCache(keystreamCache());
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+        BufferedReader input = new BufferedReader(inputReader());
+        try {
+            String settings = null;
+            ArrayList<String> lines = new ArrayList<>();
+            long skip = 0, letters = 0;
+            int size = 0;
+            for (String line = input.readLine(); line != null;
+                 line = input.readLine()) {
+                int start = 0;
+                while (start < line.length()
+                       && Character.isWhitespace(line.charAt(start))) {
+                    start += 1;
+                }
+                if (start < line.length() && line.charAt(start) == '*') {
+                    pending.add(pool.submit(section(template, settings,
+                                                    skip, lines)));
+                    settings = line.substring(start);
+                    lines = new ArrayList<>();
+                    skip = letters = size = 0;
+                } else if (settings == null && start < line.length()) {
+                    printSections(pending, 0);
+                    throw error("First line must be settings line.");
+                } else {
+                    lines.add(line);
+                    size += line.length();
+                    for (int i = 0; i < line.length(); i += 1) {
+                        if (_alphabet.contains(
+                                Character.toUpperCase(line.charAt(i)))) {
+                            letters += 1;
+                        }
+                    }
+                    if (size >= SECTION_SIZE) {
+                        pending.add(pool.submit(section(template, settings,
+                                                        skip, lines)));
+                        lines = new ArrayList<>();
+                        skip += letters;
+                        letters = size = 0;
+                    }
+                }
+                printSections(pending, SECTIONS_PER_THREAD * threads);
+            }
+            pending.add(pool.submit(section(template, settings, skip,
+                                            lines)));
+            printSections(pending, 0);
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** As for process(), but reading and splitting _input, converting, and
+     *  writing _output on three threads: the first two of their own, the
+     *  last this one.  The stages pass PIPELINE_CHUNKS reusable Chunks
+     *  around a cycle of RingBuffers, so none waits on another's I/O
+     *  unless every chunk is in use.  At the end, prints on the standard
+     *  error the percentage of the run each stage spent working rather
+     *  than waiting for the others. */
+    private void processPipelined() {
+        Machine configMach = readConfig();
+        configMach.setCompiled(true);
+        configMach.setKeystreamCache(keystreamCache());
+        RingBuffer<Chunk> free = new RingBuffer<>(PIPELINE_CHUNKS),
+            read = new RingBuffer<>(PIPELINE_CHUNKS),
+            converted = new RingBuffer<>(PIPELINE_CHUNKS);
+        for (int i = 0; i < PIPELINE_CHUNKS; i += 1) {
+            free.put(new Chunk());
+        }
+        long[] busy = new long[3];
+        long start = System.nanoTime();
+        Thread reader = new Thread(() -> readStage(free, read, busy),
+                                   "enigma-read");
+        Thread converter =
+            new Thread(() -> convertStage(configMach, read, converted, busy),
+                       "enigma-convert");
+        reader.setDaemon(true);
+        converter.setDaemon(true);
+        reader.start();
+        converter.start();
+        writeStage(converted, free, busy);
+        _output.flush();
+        double wall = Math.max(System.nanoTime() - start, 1);
+        System.err.printf("pipeline utilization: read %.1f%%,"
+                          + " convert %.1f%%, write %.1f%%%n",
+                          100 * busy[0] / wall, 100 * busy[1] / wall,
+                          100 * busy[2] / wall);
+    }
+
+    /** The read stage of --pipeline mode: split _input into chunks taken
+     *  from FREE and pass them on to READ.  Stores in BUSY[0] the
+     *  nanoseconds it spent working. */
+    private void readStage(RingBuffer<Chunk> free, RingBuffer<Chunk> read,
+                           long[] busy) {
+        long start = System.nanoTime(), waited = 0, t;
+        t = System.nanoTime();
+        Chunk chunk = free.take();
+        waited += System.nanoTime() - t;
+        try {
+            InputTokenizer input = new InputTokenizer(_input);
+            for (int kind = input.next();
+                 kind != InputTokenizer.END_OF_INPUT; kind = input.next()) {
+                CharSequence text = kind == InputTokenizer.SETTINGS
+                    ? input.settings().rest(0)
+                    : kind == InputTokenizer.MESSAGE ? input.message() : "";
+                int from = 0;
+                do {
+                    if (chunk.full()) {
+                        t = System.nanoTime();
+                        read.put(chunk);
+                        chunk = free.take();
+                        waited += System.nanoTime() - t;
+                    }
+                    from = chunk.add(kind, text, from);
+                } while (from < text.length());
+            }
+        } catch (RuntimeException excp) {
+            chunk._error = excp;
+        }
+        chunk._last = true;
+        busy[0] = System.nanoTime() - start - waited;
+        read.put(chunk);
+    }
+
+    /** The convert stage of --pipeline mode: convert the messages of the
+     *  chunks from READ with M, set up by their settings lines, and pass
+     *  the chunks on to CONVERTED.  Stores in BUSY[1] the nanoseconds it
+     *  spent working. */
+    private void convertStage(Machine M, RingBuffer<Chunk> read,
+                              RingBuffer<Chunk> converted, long[] busy) {
+        long start = System.nanoTime(), waited = 0, t;
+        SettingsLine settings = new SettingsLine();
+        boolean configured = false, last = false;
+        while (!last) {
+            t = System.nanoTime();
+            Chunk chunk = read.take();
+            waited += System.nanoTime() - t;
+            int e = 0;
+            try {
+                for (; e < chunk._events; e += 1) {
+                    CharBuffer in = chunk.input(e);
+                    if (chunk._kinds[e] == InputTokenizer.SETTINGS) {
+                        settings.parse(in);
+                        setUp(M, settings);
+                        configured = true;
+                    } else if (chunk._kinds[e] == InputTokenizer.MESSAGE) {
+                        if (!configured) {
+                            throw error("First line must be settings line.");
+                        }
+                        CharBuffer out = chunk.output(e);
+                        M.convert(in, out);
+                        chunk._outEnds[e] = out.position();
+                    }
                 }
-                String output = "";
-                for (String str : convertedMsgArr) {
-                    output = (output + str);
+            } catch (RuntimeException excp) {
+                chunk._events = e;
+                chunk._error = excp;
+                chunk._last = true;
+            }
+            last = chunk._last;
+            if (last) {
+                busy[1] = System.nanoTime() - start - waited;
+            }
+            t = System.nanoTime();
+            converted.put(chunk);
+            waited += System.nanoTime() - t;
+        }
+    }
+
+    /** The write stage of --pipeline mode: write the converted messages
+     *  of the chunks from CONVERTED to _output, in groups, and return the
+     *  chunks to FREE.  Stores in BUSY[2] the nanoseconds it spent
+     *  working.  Rethrows any error met by an earlier stage, once all
+     *  that preceded it has been written. */
+    private void writeStage(RingBuffer<Chunk> converted,
+                            RingBuffer<Chunk> free, long[] busy) {
+        long start = System.nanoTime(), waited = 0, t;
+        while (true) {
+            t = System.nanoTime();
+            Chunk chunk = converted.take();
+            waited += System.nanoTime() - t;
+            for (int e = 0; e < chunk._events; e += 1) {
+                if (chunk._kinds[e] == InputTokenizer.MESSAGE) {
+                    CharBuffer out = chunk.output(e);
+                    out.limit(chunk._outEnds[e]);
+                    _output.groups(out);
+                } else if (chunk._kinds[e] == InputTokenizer.END_OF_LINE) {
+                    _output.endLine();
                 }
-                output = output.trim();
-                printMessageLine(output);
             }
+            if (chunk._error != null) {
+                throw chunk._error;
+            }
+            if (chunk._last) {
+                break;
+            }
+            chunk.clear();
+            free.put(chunk);
+        }
+        busy[2] = System.nanoTime() - start - waited;
+    }
+
+    /** A batch of pieces of input (settings lines, pieces of message
+     *  lines and line ends, as from InputTokenizer) and of the conversions
+     *  of its messages, passed between the stages of --pipeline mode. */
+    private static final class Chunk {
+
+        /** Return true iff I have no room for another piece. */
+        boolean full() {
+            return _events == CHUNK_EVENTS || _length == _chars.length;
         }
 
+        /** Add the characters of TEXT from FROM on, as a piece of kind
+         *  KIND, or as many of them as fit if KIND is MESSAGE.  Return the
+         *  index in TEXT of the first character not added.  A settings
+         *  line is always added whole, growing my buffers if need be. */
+        int add(int kind, CharSequence text, int from) {
+            int count = text.length() - from;
+            if (kind != InputTokenizer.SETTINGS) {
+                count = Math.min(count, _chars.length - _length);
+            } else if (_length + count > _chars.length) {
+                _chars = Arrays.copyOf(_chars, _length + count);
+                _out = Arrays.copyOf(_out, _length + count);
+            }
+            for (int i = 0; i < count; i += 1) {
+                _chars[_length + i] = text.charAt(from + i);
+            }
+            _kinds[_events] = kind;
+            _starts[_events] = _length;
+            _length += count;
+            _events += 1;
+            return from + count;
+        }
+
+        /** Return a view of the input of piece E.  It is valid until
+         *  the next call. */
+        CharBuffer input(int e) {
+            if (_inView.array() != _chars) {
+                _inView = CharBuffer.wrap(_chars);
+            }
+            _inView.limit(end(e)).position(_starts[e]);
+            return _inView;
+        }
+
+        /** Return a view of the space for the output of piece E.  It is
+         *  valid until the next call. */
+        CharBuffer output(int e) {
+            if (_outView.array() != _out) {
+                _outView = CharBuffer.wrap(_out);
+            }
+            _outView.limit(end(e)).position(_starts[e]);
+            return _outView;
+        }
+
+        /** Empty me, for reuse. */
+        void clear() {
+            _length = 0;
+            _events = 0;
+            _last = false;
+            _error = null;
+        }
+
+        /** Return the end of the input of piece E. */
+        private int end(int e) {
+            return e + 1 < _events ? _starts[e + 1] : _length;
+        }
+
+        /** _kinds[e] is the kind of piece E, as from InputTokenizer.next. */
+        private final int[] _kinds = new int[CHUNK_EVENTS];
+        /** _starts[e] is the index of the first character of piece E in
+         *  _chars, and of its conversion in _out. */
+        private final int[] _starts = new int[CHUNK_EVENTS];
+        /** _outEnds[e] is the end of the conversion of piece E in _out. */
+        private final int[] _outEnds = new int[CHUNK_EVENTS];
+        /** Number of pieces. */
+        private int _events;
+        /** Number of characters used in _chars. */
+        private int _length;
+        /** True iff I hold the end of the input. */
+        private boolean _last;
+        /** Error met while reading or converting my pieces, or null. */
+        private RuntimeException _error;
+        /** Input characters of my pieces. */
+        private char[] _chars = new char[CHUNK_SIZE];
+        /** Conversions of my messages, each at the offset of its input. */
+        private char[] _out = new char[CHUNK_SIZE];
+        /** Views of _chars and _out. */
+        private CharBuffer _inView = CharBuffer.wrap(_chars),
+            _outView = CharBuffer.wrap(_out);
+    }
+
+    /** Return a task that sets up a copy of TEMPLATE according to the
+     *  settings line SETTINGS, skips SKIP characters, and returns the
+     *  printed form of the conversions of LINES.  If SETTINGS is null,
+     *  LINES are blank lines preceding the first settings line. */
+    private Callable<String> section(Machine template, String settings,
+                                     long skip, ArrayList<String> lines) {
+        return () -> {
+            StringBuilder result = new StringBuilder();
+            Machine M = null;
+            if (settings != null) {
+                M = template.copy();
+                SettingsLine line = new SettingsLine();
+                line.parse(settings);
+                setUp(M, line);
+                M.skip(skip);
+            }
+            for (String line : lines) {
+                int count = 0;
+                for (int i = 0; i < line.length(); i += 1) {
+                    char c = Character.toUpperCase(line.charAt(i));
+                    if (M == null || !_alphabet.contains(c)) {
+                        continue;
+                    }
+                    if (count == 5) {
+                        result.append(' ');
+                        count = 0;
+                    }
+                    result.append(_alphabet.toChar(
+                                      M.convert(_alphabet.toInt(c))));
+                    count += 1;
+                }
+                result.append(System.lineSeparator());
+            }
+            return result.toString();
+        };
+    }
+
+    /** Print the results of the oldest sections in PENDING, in order,
+     *  until at most LEFT remain.  Rethrows any error raised while
+     *  converting one of them. */
+    private void printSections(ArrayDeque<Future<String>> pending,
+                               int left) {
+        while (pending.size() > left) {
+            try {
+                _output.print(pending.remove().get());
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) excp.getCause();
+                }
+                throw error("%s", excp.getCause());
+            } catch (InterruptedException excp) {
+                throw error("interrupted");
+            }
+        }
+    }
+
+    /** As for process(), but reading _inputPath and writing _outputPath
+     *  through memory mappings of at most MAP_WINDOW bytes each.  Input
+     *  is taken to be ASCII; bytes that do not encode a character of the
+     *  alphabet are dropped from messages as usual.  Letters are held as
+     *  byte indices, so the alphabet may have at most 256 characters. */
+    private void processMapped() {
+        Machine configMach = readConfig();
+        configMach.setCompiled(true);
+        configMach.setKeystreamCache(keystreamCache());
+        if (_alphabet.size() > Machine.BYTE_ALPHABET_LIMIT) {
+            throw error("--mmap needs an alphabet of at most %d characters",
+                        Machine.BYTE_ALPHABET_LIMIT);
+        }
+        int[] toIndex = new int[128];
+        Arrays.fill(toIndex, -1);
+        for (int i = 0; i < _alphabet.size(); i += 1) {
+            char c = _alphabet.toChar(i);
+            if (c < toIndex.length) {
+                toIndex[c] = i;
+            }
+        }
+        byte[] letters = new byte[Machine.STREAM_BUFFER_SIZE];
+        SettingsLine settings = new SettingsLine();
+        boolean inSettings = false;
+        boolean atLineStart = true, lineSeen = false, configured = false;
+        try (FileChannel in = FileChannel.open(_inputPath, READ);
+             FileChannel out = FileChannel.open(_outputPath, READ, WRITE,
+                                                CREATE, TRUNCATE_EXISTING)) {
+            _mappedOutput = out;
+            _outputBase = 0;
+            _outputWindow = out.map(READ_WRITE, 0, MAP_WINDOW);
+            long size = in.size();
+            try {
+                for (long base = 0; base < size; base += MAP_WINDOW) {
+                    ByteBuffer window = in.map(READ_ONLY, base,
+                        Math.min(MAP_WINDOW, size - base));
+                    while (window.hasRemaining()) {
+                        int pos = window.position();
+                        byte b = window.get(pos);
+                        if (inSettings) {
+                            window.position(pos + 1);
+                            if (b == '\n') {
+                                settings.finish();
+                                setUp(configMach, settings);
+                                inSettings = false;
+                                configured = true;
+                                atLineStart = true;
+                                lineSeen = false;
+                            } else {
+                                settings.append((char) (b & 0xff));
+                            }
+                        } else if (atLineStart) {
+                            if (b == '*') {
+                                settings.clear();
+                                inSettings = true;
+                            } else if (b == '\n') {
+                                window.position(pos + 1);
+                                endMappedLine();
+                                lineSeen = false;
+                            } else if (Character.isWhitespace(b & 0xff)) {
+                                window.position(pos + 1);
+                                lineSeen = true;
+                            } else if (!configured) {
+                                throw error(
+                                    "First line must be settings line.");
+                            } else {
+                                atLineStart = false;
+                            }
+                        } else {
+                            int count = 0;
+                            while (window.hasRemaining()) {
+                                int c = window.get();
+                                if (c == '\n') {
+                                    break;
+                                }
+                                if (c >= 'a' && c <= 'z') {
+                                    c += 'A' - 'a';
+                                }
+                                int index = c >= 0 && c < toIndex.length
+                                    ? toIndex[c] : -1;
+                                if (index >= 0) {
+                                    letters[count] = (byte) index;
+                                    count += 1;
+                                    if (count == letters.length) {
+                                        putMappedGroups(configMach, letters,
+                                                        count);
+                                        count = 0;
+                                    }
+                                }
+                            }
+                            putMappedGroups(configMach, letters, count);
+                            if (window.get(window.position() - 1) == '\n') {
+                                endMappedLine();
+                                atLineStart = true;
+                                lineSeen = false;
+                            }
+                        }
+                    }
+                }
+                if (inSettings) {
+                    settings.finish();
+                    setUp(configMach, settings);
+                } else if (!atLineStart || lineSeen) {
+                    endMappedLine();
+                }
+            } finally {
+                long length = _outputBase + _outputWindow.position();
+                _outputWindow = null;
+                out.truncate(length);
+            }
+        } catch (IOException excp) {
+            throw error("could not map %s or %s: %s", _inputPath,
+                        _outputPath, excp.getMessage());
+        }
+    }
+
+    /** Convert the first COUNT alphabet indices in LETTERS with M and
+     *  write the results to the mapped output, continuing the groups of
+     *  five of the current output line. */
+    private void putMappedGroups(Machine M, byte[] letters, int count)
+        throws IOException {
+        M.convert(letters, 0, letters, 0, count);
+        for (int i = 0; i < count; i += 1) {
+            if (_groupCount == 5) {
+                putMapped((byte) ' ');
+                _groupCount = 0;
+            }
+            putMapped((byte) _alphabet.toChar(letters[i] & 0xff));
+            _groupCount += 1;
+        }
+    }
+
+    /** End the current line of the mapped output. */
+    private void endMappedLine() throws IOException {
+        for (byte b : NEWLINE) {
+            putMapped(b);
+        }
+        _groupCount = 0;
+    }
+
+    /** Append B to the mapped output, mapping the next window of the
+     *  output file if the current one is full. */
+    private void putMapped(byte b) throws IOException {
+        if (!_outputWindow.hasRemaining()) {
+            _outputBase += _outputWindow.position();
+            _outputWindow = _mappedOutput.map(READ_WRITE, _outputBase,
+                                              MAP_WINDOW);
+        }
+        _outputWindow.put(b);
     }
 
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
+     *  file _configBytes, which may be text or a ConfigImage. */
     private Machine readConfig() {
+        if (ConfigImage.isImage(_configBytes)) {
+            ConfigImage image = ConfigImage.read(_configBytes);
+            _alphabet = image.alphabet();
+            _numRotors = image.numRotors();
+            _numPawls = image.numPawls();
+            _allRots = new ArrayList<>(image.allRotors());
+            return image.machine();
+        }
+        _config = new Scanner(new String(_configBytes));
         try {
             String next = _config.next();
             if (next.length() == 0) {
                 throw new EnigmaException("Specify # rotor slots, # pawls");
             }
-            _alphabet = new Alphabet();
+            _alphabet = new Alphabet(next);
             int rotorSlots = _config.nextInt();
             int numPawls = _config.nextInt();
+            _numRotors = rotorSlots;
+            _numPawls = numPawls;
             _allRots = new ArrayList<>();
 
             while (_config.hasNext()) {
@@ -250,66 +1219,72 @@ public final class Main {
         }
     }
 
+    /** Return a new keystream cache with budget _keystreamBudget, or null
+     *  if the budget is 0. */
+    private KeystreamCache keystreamCache() {
+        return _keystreamBudget == 0 ? null
+            : new KeystreamCache(_keystreamBudget);
+    }
+
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        settings = settings.toUpperCase().replaceAll("\\s+", " ");
-        String[] msg = settings.split(" ");
-
-        ArrayList<String> seen = new ArrayList<>();
-        for (int i = 1; i <= M.numRotors(); i++) {
-            if (seen.contains(msg[i])) {
-                throw new EnigmaException("Rotor is repeating.");
-            } else {
-                seen.add(msg[i]);
+     *  which must have the format specified in the assignment.  Settings
+     *  are compiled once per distinct settings-line text and cached, so a
+     *  repeated settings line only copies its compiled form into M. */
+    private void setUp(Machine M, SettingsLine settings) {
+        CompiledSetting setting = _settingsCache.get(settings.key());
+        if (setting == null) {
+            setting = compile(M, settings);
+            _settingsCache.put(settings.key().copy(), setting);
+        }
+        M.apply(setting);
+    }
+
+    /** Return the compiled form of SETTINGS for machines configured as M,
+     *  checking that SETTINGS is valid. */
+    private CompiledSetting compile(Machine M, SettingsLine settings) {
+        int numRotors = M.numRotors();
+        if (settings.words() < numRotors + 2) {
+            throw error("Wrong Number of setting arguments.");
+        }
+        for (int i = 1; i <= numRotors; i += 1) {
+            for (int j = 1; j < i; j += 1) {
+                if (settings.wordsEqual(i, j)) {
+                    throw new EnigmaException("Rotor is repeating.");
+                }
+            }
+        }
+        Rotor[] rotors = new Rotor[numRotors];
+        for (int i = 0; i < numRotors; i += 1) {
+            rotors[i] = M.registry().find(settings, i + 1);
+            if (rotors[i] == null) {
+                throw new EnigmaException("Rotors Not Named Correctly.");
             }
         }
-        String[] rotorArr = new String[M.numRotors()];
-        System.arraycopy(msg, 1, rotorArr, 0, rotorArr.length);
-        M.insertRotors(rotorArr);
+        M.checkRotors(rotors);
 
-        if (msg[M.numRotors() + 1].length() > (M.numRotors() - 1)) {
+        int wheels = numRotors + 1;
+        if (settings.wordLength(wheels) > numRotors - 1) {
             throw new EnigmaException("Wheel settings are too long");
         }
-
-        if (msg[M.numRotors() + 1].length() < (M.numRotors() - 1)) {
+        if (settings.wordLength(wheels) < numRotors - 1) {
             throw new EnigmaException("Wheel settings are too short");
         }
-
-        for (int i = 0; i < msg[M.numRotors() + 1].length(); i++) {
-            if (!_alphabet.contains(msg[M.numRotors() + 1].charAt(i))) {
+        int[] wheelSettings = new int[numRotors - 1];
+        for (int i = 0; i < wheelSettings.length; i += 1) {
+            char c = settings.charAt(wheels, i);
+            if (!_alphabet.contains(c)) {
                 throw new EnigmaException("Some characters not in alphabet.");
             }
+            wheelSettings[i] = _alphabet.toInt(c);
         }
 
-        M.setRotors(msg[M.numRotors() + 1]);
-        String plugString = "";
-        for (int x = M.numRotors() + 2; x < msg.length; x++) {
-            plugString = plugString + msg[x];
+        Permutation plugboard =
+            new Permutation(settings.rest(numRotors + 2), _alphabet);
+        int[] plugs = new int[_alphabet.size()];
+        for (int i = 0; i < plugs.length; i += 1) {
+            plugs[i] = plugboard.permute(i);
         }
-
-        M.setPlugboard(new Permutation(plugString, _alphabet));
+        return new CompiledSetting(rotors, wheelSettings, plugs);
     }
 
-
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        char[] msgArr = msg.toCharArray();
-        int counter = 0;
-        for (char c : msgArr) {
-            if (counter == 5) {
-                _output.print(" ");
-                counter = 0;
-            }
-            if (c == ' ') {
-                continue;
-            }
-            _output.print(c);
-            counter += 1;
-        }
-        _output.println();
-    }
-
-
 }
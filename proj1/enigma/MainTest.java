@@ -0,0 +1,121 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Main class.
+ *  @author Daniel del Carpio
+ */
+public class MainTest {
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a configuration of UPPER with rotors I, II, III and
+     *  reflector B, in the format read by Main. */
+    private static String config() {
+        return UPPER_STRING + "\n 4 3\n"
+            + " I MQ " + NAVALA.get("I") + "\n"
+            + " II ME " + NAVALA.get("II") + "\n"
+            + " III MV " + NAVALA.get("III") + "\n"
+            + " B R " + NAVALA.get("B") + "\n";
+    }
+
+    /** Return a message of LINES lines of varied text, each about 40
+     *  characters long. */
+    private static String message(int lines) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < lines; i += 1) {
+            result.append("Line ").append(i)
+                .append(" of the QUICK brown fox, jumps over\n");
+        }
+        return result.toString();
+    }
+
+    /** Run Main with ARGS followed by the names of files holding CONFIG
+     *  and INPUT and of an output file, and return the output file.
+     *  Checks that Main throws an EnigmaException iff FAILS. */
+    private static Path run(String[] args, String config, String input,
+                            boolean fails)
+        throws IOException {
+        Path conf = Files.createTempFile("enigma", ".conf");
+        Path in = Files.createTempFile("enigma", ".in");
+        Path out = Files.createTempFile("enigma", ".out");
+        conf.toFile().deleteOnExit();
+        in.toFile().deleteOnExit();
+        out.toFile().deleteOnExit();
+        Files.writeString(conf, config);
+        Files.writeString(in, input);
+        String[] all = new String[args.length + 3];
+        System.arraycopy(args, 0, all, 0, args.length);
+        all[args.length] = conf.toString();
+        all[args.length + 1] = in.toString();
+        all[args.length + 2] = out.toString();
+        boolean failed = false;
+        try {
+            new Main(all).process();
+        } catch (EnigmaException excp) {
+            failed = true;
+        }
+        assertEquals(fails, failed);
+        return out;
+    }
+
+    @Test
+    public void checkMappedError() throws IOException {
+        String[] mmap = { "--mmap" };
+        String good = "* B I II III AAA\nHELLO WORLD\n";
+        Path expected = run(new String[0], config(), good, false);
+        Path out = run(mmap, config(), good + "* B I II IV AAA\nHELLO\n",
+                       true);
+        assertEquals(Files.readString(expected), Files.readString(out));
+        out = run(mmap, config(), "HELLO\n", true);
+        assertEquals(0, Files.size(out));
+        out = run(mmap, config(), good + "* B I II\nHELLO\n", true);
+        assertEquals(Files.readString(expected), Files.readString(out));
+    }
+
+    @Test
+    public void checkParallel() throws IOException {
+        String[] sequential = {}, parallel = { "--parallel" };
+        String good = "* B I II III AAA\n" + message(2000)
+            + "* B III I II QRS (AB) (XY)\n\n" + message(50)
+            + "* B II III I ZZZ\n" + message(10);
+        Path expected = run(sequential, config(), good, false);
+        Path out = run(parallel, config(), good, false);
+        assertEquals(Files.readString(expected), Files.readString(out));
+
+        String bad = good + "* B I II IV AAA\n" + message(10)
+            + "* B I II III AAA\n" + message(10);
+        expected = run(sequential, config(), bad, true);
+        out = run(parallel, config(), bad, true);
+        assertEquals(Files.readString(expected), Files.readString(out));
+        assertTrue(Files.size(out) > 0);
+    }
+
+    @Test
+    public void checkPipelined() throws IOException {
+        String[] sequential = {}, pipeline = { "--pipeline" };
+        String good = "* B I II III AAA\n" + message(1000)
+            + "\n* B III I II QRS (AB) (XY)\n" + message(1000)
+            + "* B II III I ZZZ\n\n" + message(10);
+        Path expected = run(sequential, config(), good, false);
+        Path out = run(pipeline, config(), good, false);
+        assertEquals(Files.readString(expected), Files.readString(out));
+
+        String bad = good + "* B I II IV AAA\n" + message(1000)
+            + "* B I II III AAA\n" + message(10);
+        expected = run(sequential, config(), bad, true);
+        out = run(pipeline, config(), bad, true);
+        assertEquals(Files.readString(expected), Files.readString(out));
+    }
+}
@@ -13,46 +13,30 @@ class MovingRotor extends Rotor {
      *  alphabet).
      */
 
-    /** Permutation of rotor. */
-    private Permutation _perm;
-
-    /** My number of notches. */
-    private String _notches;
-
     /** Moving Rotor Class.
      *
      * @param name name of Rotor
      * @param perm permutation of Rotor
      * @param notches of Rotor */
     MovingRotor(String name, Permutation perm, String notches) {
-        super(name, perm);
-        _notches = notches;
-
+        super(new Wiring(name, perm, notches));
     }
 
-    /** Returns ASCII version of characters in notches. */
-    int[] getNotchesArr() {
-        int[] temp = new int[_notches.length()];
-        for (int i = 0; i < _notches.length(); i += 1) {
-            temp[i] = (_notches.charAt(i));
-        }
-        return temp;
+    /** A moving rotor with the given WIRING, initially at setting 0. */
+    MovingRotor(Wiring wiring) {
+        super(wiring);
     }
 
     @Override
     boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i += 1) {
-            int current = _notches.charAt(i);
-            if (('A' + permutation().wrap((setting() - 1))) == current) {
-                return true;
-            }
-        }
-        return false;
+        boolean[] notchMap = notchMap();
+        return notchMap != null && notchMap[setting()];
     }
 
     @Override
     void advance() {
-        set(permutation().wrap(setting() + 1));
+        int next = setting() + 1;
+        set(next == size() ? 0 : next);
     }
 
     @Override
@@ -60,8 +44,4 @@ class MovingRotor extends Rotor {
         return true;
     }
 
-
-
-
-
 }
@@ -71,4 +71,16 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkNotches() {
+        setRotor("VI", NAVALA, "ZM");
+        for (int i = 0; i < 26; i += 1) {
+            rotor.set(i);
+            assertEquals(msg("Rotor VI", "notch at %d", i),
+                         i == 12 || i == 25, rotor.atNotch());
+        }
+        rotor.advance();
+        assertEquals(0, rotor.setting());
+    }
+
 }
@@ -0,0 +1,119 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** Bigram and trigram log-probabilities of a language over an alphabet,
+ *  kept in flat float arrays indexed by alphabet indices: the bigram ab
+ *  is at a * N + b and the trigram abc at (a * N + b) * N + c, where N is
+ *  the alphabet size.
+ *  @author Daniel del Carpio
+ */
+class NgramModel {
+
+    /** A model over ALPHA whose bigram and trigram log-probabilities are
+     *  BIGRAMS and TRIGRAMS, laid out as described above.  The arrays are
+     *  used directly, not copied. */
+    NgramModel(Alphabet alpha, float[] bigrams, float[] trigrams) {
+        int n = alpha.size();
+        if (bigrams.length != n * n || trigrams.length != n * n * n) {
+            throw error("n-gram tables do not match alphabet size %d", n);
+        }
+        _size = n;
+        _bigrams = bigrams;
+        _trigrams = trigrams;
+    }
+
+    /** Return a model over ALPHA estimated from the text read from
+     *  TRAINING.  Characters are upper-cased, and characters outside the
+     *  alphabet are skipped, so n-grams span words.  Counts are smoothed
+     *  by adding one, so no n-gram has probability 0. */
+    static NgramModel train(Alphabet alpha, Reader training) {
+        int n = alpha.size();
+        long[] bigramCounts = new long[n * n];
+        long[] trigramCounts = new long[n * n * n];
+        long bigramTotal = 0, trigramTotal = 0;
+        int first = -1, second = -1;
+        try {
+            char[] buffer = new char[1 << 13];
+            for (int len = training.read(buffer); len != -1;
+                 len = training.read(buffer)) {
+                for (int i = 0; i < len; i += 1) {
+                    char c = Character.toUpperCase(buffer[i]);
+                    if (!alpha.contains(c)) {
+                        continue;
+                    }
+                    int third = alpha.toInt(c);
+                    if (second >= 0) {
+                        bigramCounts[second * n + third] += 1;
+                        bigramTotal += 1;
+                        if (first >= 0) {
+                            trigramCounts[(first * n + second) * n + third]
+                                += 1;
+                            trigramTotal += 1;
+                        }
+                    }
+                    first = second;
+                    second = third;
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read training text: %s",
+                        excp.getMessage());
+        }
+        return new NgramModel(alpha, logProbabilities(bigramCounts,
+                                                      bigramTotal),
+                              logProbabilities(trigramCounts, trigramTotal));
+    }
+
+    /** Return the add-one-smoothed natural log-probabilities of COUNTS,
+     *  whose sum is TOTAL. */
+    private static float[] logProbabilities(long[] counts, long total) {
+        float[] result = new float[counts.length];
+        double denominator = total + counts.length;
+        for (int i = 0; i < counts.length; i += 1) {
+            result[i] = (float) Math.log((counts[i] + 1) / denominator);
+        }
+        return result;
+    }
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the sum of the bigram log-probabilities of the first LEN
+     *  alphabet indices of TEXT. */
+    float bigramScore(int[] text, int len) {
+        float[] table = _bigrams;
+        int n = _size;
+        float sum = 0;
+        for (int i = 1; i < len; i += 1) {
+            sum += table[text[i - 1] * n + text[i]];
+        }
+        return sum;
+    }
+
+    /** Return the sum of the trigram log-probabilities of the first LEN
+     *  alphabet indices of TEXT. */
+    float trigramScore(int[] text, int len) {
+        float[] table = _trigrams;
+        int n = _size;
+        float sum = 0;
+        for (int i = 2; i < len; i += 1) {
+            sum += table[(text[i - 2] * n + text[i - 1]) * n + text[i]];
+        }
+        return sum;
+    }
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Bigram log-probabilities. */
+    private final float[] _bigrams;
+
+    /** Trigram log-probabilities. */
+    private final float[] _trigrams;
+}
@@ -1,9 +1,16 @@
 package enigma;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  Permutations may be composed,
+ *  inverted, raised to powers, conjugated by shifts and split into
+ *  cycles as wholes, each operation returning a new permutation in time
+ *  proportional to the alphabet size.  Static versions of the most used
+ *  operations work directly on tables, for code that must not allocate.
  *  @author Daniel Del Carpio
  */
 class Permutation {
@@ -13,37 +20,115 @@ class Permutation {
      *  is interpreted as a permutation in cycle notation.  Characters in the
      *  alphabet that are not included in any cycle map to themselves.
      *  Whitespace is ignored. */
-    Permutation(String cycles, Alphabet alphabet) {
+    Permutation(CharSequence cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _cycles = cycles;
-        int open = 0;
-        int closed = 0;
-        for (int i = 0; i < _cycles.length(); i += 1) {
-            if (_cycles.charAt(i) == '(') {
-                open += 1;
-            }
-            if (_cycles.charAt(i) == ')') {
-                closed += 1;
+        int n = alphabet.size();
+        _forward = new int[n];
+        _inverse = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
+        _used = new boolean[n];
+
+        int start = -1;
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char c = cycles.charAt(i);
+            if (c == '(') {
+                if (start != -1) {
+                    throw error("Wrong Number of setting arguments.");
+                }
+                start = i + 1;
+            } else if (c == ')') {
+                if (start == -1) {
+                    throw error("Wrong Number of setting arguments.");
+                }
+                addCycle(cycles, start, i);
+                start = -1;
+            } else if (start == -1 && !Character.isWhitespace(c)) {
+                throw error("character '%c' outside of a cycle", c);
             }
         }
-        if (open != closed) {
-            throw new EnigmaException("Wrong Number of setting arguments.");
+        if (start != -1) {
+            throw error("Wrong Number of setting arguments.");
         }
+    }
 
-        permutations = new int[size()];
-        int traverse = 0;
-        for (int i = 0; i < _cycles.length(); i++) {
-            if ((int) _cycles.charAt(i) >= 'A') {
-                permutations[traverse] = (int) _cycles.charAt(i);
-                traverse += 1;
+    /** A permutation of ALPHABET in which index i maps to FORWARD[i].
+     *  FORWARD must contain each index of ALPHABET exactly once; it is
+     *  copied. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        int n = alphabet.size();
+        if (forward.length != n) {
+            throw error("permutation table does not match alphabet size");
+        }
+        _forward = forward.clone();
+        _inverse = new int[n];
+        Arrays.fill(_inverse, -1);
+        _used = new boolean[n];
+        for (int i = 0; i < n; i += 1) {
+            int to = _forward[i];
+            if (to < 0 || to >= n || _inverse[to] != -1) {
+                throw error("permutation table is not a permutation");
             }
+            _inverse[to] = i;
+            _used[i] = to != i;
         }
+    }
 
+    /** A permutation of ALPHABET with tables FORWARD and INVERSE, which
+     *  must be mutually inverse permutations.  The tables become mine. */
+    private Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = inverse;
+        _used = new boolean[forward.length];
+        for (int i = 0; i < forward.length; i += 1) {
+            _used[i] = forward[i] != i;
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     void addCycle(String cycle) {
+        addCycle(cycle, 0, cycle.length());
+    }
+
+    /** Add the cycle formed by the characters CYCLES[START .. END-1], as
+     *  for addCycle(String). */
+    private void addCycle(CharSequence cycles, int start, int end) {
+        int first = -1, prev = -1;
+        for (int i = start; i < end; i += 1) {
+            char c = cycles.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            if (!_alphabet.contains(c)) {
+                throw error("character '%c' not in alphabet", c);
+            }
+            int index = _alphabet.toInt(c);
+            if (_used[index]) {
+                throw error("character '%c' appears in more than one place",
+                            c);
+            }
+            _used[index] = true;
+            if (first == -1) {
+                first = index;
+            } else {
+                link(prev, index);
+            }
+            prev = index;
+        }
+        if (first != -1) {
+            link(prev, first);
+        }
+    }
+
+    /** Record that FROM maps to TO in both of my tables. */
+    private void link(int from, int to) {
+        _forward[from] = to;
+        _inverse[to] = from;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -57,94 +142,220 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        if (_cycles.length() == 0) {
-            return p;
+        if (p >= 0 && p < _forward.length) {
+            return _forward[p];
         }
-
-        int val = wrap(p) + 'A';
-        char charval = (char) val;
-        char out = permute(charval);
-        return (int) out - 'A';
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        if (_cycles.length() == 0) {
-            return c;
+        if (c >= 0 && c < _inverse.length) {
+            return _inverse[c];
         }
-        int val = wrap(c) + 'A';
-        char temp = (char) val;
-        int temp2 = invert(temp);
-        return temp2 - 'A';
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        if (_cycles.length() == 0) {
+        int index = _alphabet.toInt(p);
+        if (index < 0) {
             return p;
         }
+        return _alphabet.toChar(_forward[index]);
+    }
 
-        for (int i = 0; i < permutations.length; i++) {
-            if ((char) permutations[i] == p) {
-                int stringIndex = _cycles.indexOf(p);
-                if (_cycles.charAt(stringIndex + 1) == ')') {
-                    int start = stringIndex;
-                    char startChar = _cycles.charAt(stringIndex);
-                    while (startChar != '(') {
-                        start = start - 1;
-                        startChar = _cycles.charAt(start);
-                    }
-                    return _cycles.charAt(start + 1);
+    /** Return the result of applying the inverse of this permutation to C. */
+    char invert(char c) {
+        int index = _alphabet.toInt(c);
+        if (index < 0) {
+            return c;
+        }
+        return _alphabet.toChar(_inverse[index]);
+    }
+
+    /** Return the alphabet used to initialize this Permutation. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the permutation that applies me and then OTHER, which must
+     *  be over the same alphabet: it maps P to OTHER.permute(permute(P)). */
+    Permutation compose(Permutation other) {
+        checkSize(other);
+        int n = size();
+        int[] forward = new int[n];
+        compose(_forward, other._forward, forward);
+        int[] inverse = new int[n];
+        compose(other._inverse, _inverse, inverse);
+        return new Permutation(forward, inverse, _alphabet);
+    }
+
+    /** Return my inverse. */
+    Permutation inverse() {
+        return new Permutation(_inverse.clone(), _forward.clone(), _alphabet);
+    }
+
+    /** Return the result of applying me K times, where K may be negative.
+     *  Takes time proportional to my size, whatever K is. */
+    Permutation power(int k) {
+        int n = size();
+        int[] forward = new int[n], inverse = new int[n];
+        for (int[] cycle : cycles()) {
+            int length = cycle.length;
+            int shift = (int) Math.floorMod((long) k, (long) length);
+            for (int i = 0; i < length; i += 1) {
+                int to = cycle[(i + shift) % length];
+                forward[cycle[i]] = to;
+                inverse[to] = cycle[i];
+            }
+        }
+        return new Permutation(forward, inverse, _alphabet);
+    }
+
+    /** Return my conjugate by a shift of K: the permutation that maps P to
+     *  permute(P + K) - K, modulo the alphabet size.  This is what a rotor
+     *  wired as I am performs at setting K. */
+    Permutation shifted(int k) {
+        int n = size();
+        int[] forward = new int[n], inverse = new int[n];
+        k = wrap(k);
+        for (int p = 0; p < n; p += 1) {
+            int q = p + k < n ? p + k : p + k - n;
+            int to = _forward[q] - k;
+            to = to < 0 ? to + n : to;
+            forward[p] = to;
+            inverse[to] = p;
+        }
+        return new Permutation(forward, inverse, _alphabet);
+    }
+
+    /** Return my cycles, including those of length 1, as arrays of
+     *  indices.  Each cycle starts at its least index, in which order the
+     *  cycles are listed. */
+    int[][] cycles() {
+        int n = size();
+        boolean[] seen = new boolean[n];
+        ArrayList<int[]> result = new ArrayList<>();
+        int[] cycle = new int[n];
+        for (int c = 0; c < n; c += 1) {
+            if (!seen[c]) {
+                int length = 0;
+                for (int d = c; !seen[d]; d = _forward[d]) {
+                    seen[d] = true;
+                    cycle[length] = d;
+                    length += 1;
                 }
-                return (char) permutations[i + 1];
+                result.add(Arrays.copyOf(cycle, length));
             }
         }
-        return p;
+        return result.toArray(new int[result.size()][]);
     }
 
-    /** Return the result of applying the inverse of this permutation to C. */
-    char invert(char c) {
-        if (_cycles.length() == 0) {
-            return c;
+    /** Return my cycle type: the lengths of my cycles, including those of
+     *  length 1, in decreasing order. */
+    int[] cycleType() {
+        int n = size();
+        int[] counts = new int[n + 1];
+        cycleCounts(_forward, counts, new boolean[n]);
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        int[] result = new int[total];
+        int k = 0;
+        for (int length = n; length > 0; length -= 1) {
+            for (int i = counts[length]; i > 0; i -= 1) {
+                result[k] = length;
+                k += 1;
+            }
         }
+        return result;
+    }
+
+    /** Return my table: element #i is the index that index I maps to.  The
+     *  table is a copy. */
+    int[] table() {
+        return _forward.clone();
+    }
+
+    /** Return me in cycle notation, as accepted by Permutation(CharSequence,
+     *  Alphabet), leaving out cycles of length 1.  Cycles are ordered as
+     *  for cycles(). */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int[] cycle : cycles()) {
+            if (cycle.length > 1) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(');
+                for (int c : cycle) {
+                    result.append(_alphabet.toChar(c));
+                }
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
 
-        for (int i = 0; i < permutations.length; i++) {
-            if ((char) permutations[i] == c) {
-                int stringIndex = _cycles.indexOf(c);
-                if (_cycles.charAt(stringIndex - 1) == '(') {
-                    int start = stringIndex;
-                    char first = _cycles.charAt(start);
-                    while (first != ')') {
-                        start = start + 1;
-                        first = _cycles.charAt(start);
+    /** Store in RESULT the table of the permutation that applies the table
+     *  FIRST and then the table SECOND: RESULT[c] = SECOND[FIRST[c]].  The
+     *  tables must have the same length, and RESULT must not be FIRST. */
+    static void compose(int[] first, int[] second, int[] result) {
+        for (int c = 0; c < first.length; c += 1) {
+            result[c] = second[first[c]];
+        }
+    }
+
+    /** Set COUNTS[k], for 0 < k <= N, to the number of cycles of length K
+     *  of the permutation whose table is TABLE, where N is TABLE.length.
+     *  COUNTS must have at least N + 1 elements; SEEN, of N elements, is
+     *  used as scratch space. */
+    static void cycleCounts(int[] table, int[] counts, boolean[] seen) {
+        int n = table.length;
+        Arrays.fill(counts, 0, n + 1, 0);
+        Arrays.fill(seen, false);
+        for (int c = 0; c < n; c += 1) {
+            if (!seen[c]) {
+                int length = 0;
+                for (int d = c; !seen[d]; d = table[d]) {
+                    if (d < 0 || d >= n) {
+                        throw error("not a permutation");
                     }
-                    return _cycles.charAt(start - 1);
+                    seen[d] = true;
+                    length += 1;
                 }
-                return (char) permutations[i - 1];
+                counts[length] += 1;
             }
         }
-        return c;
     }
 
-    /** Return the alphabet used to initialize this Permutation. */
-    Alphabet alphabet() {
-        return _alphabet;
+    /** Check that OTHER permutes an alphabet of my size. */
+    private void checkSize(Permutation other) {
+        if (other.size() != size()) {
+            throw error("permutations of different alphabets");
+        }
     }
 
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** String of cycles as stated in config file. */
-    private String _cycles;
+    /** _forward[i] is the index that index I maps to. */
+    private int[] _forward;
+
+    /** _inverse[i] is the index that maps to index I. */
+    private int[] _inverse;
 
-    /** Return the permutations array used to initialize this Permutation. */
-    private int[] permutations;
+    /** _used[i] is true iff index I already appears in some cycle. */
+    private boolean[] _used;
 }
@@ -51,4 +51,61 @@ public class PermutationTest {
         checkPerm("identity", UPPER_STRING, UPPER_STRING);
     }
 
+    @Test
+    public void checkNavalA() {
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        checkPerm("Rotor I", UPPER_STRING, NAVALA_MAP.get("I"));
+    }
+
+    @Test
+    public void checkArbitraryAlphabet() {
+        alpha = "19AQ*";
+        perm = new Permutation("(1Q) (9*A)", new Alphabet(alpha));
+        checkPerm("arbitrary", "19AQ*", "Q*91A");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkNotInAlphabet() {
+        perm = new Permutation("(AB) (C#)", UPPER);
+    }
+
+    @Test
+    public void checkFromTable() {
+        Permutation cycles = new Permutation(NAVALA.get("I"), UPPER);
+        int[] table = new int[UPPER.size()];
+        for (int i = 0; i < table.length; i += 1) {
+            table[i] = cycles.permute(i);
+        }
+        perm = new Permutation(table, UPPER);
+        checkPerm("Rotor I from table", UPPER_STRING, NAVALA_MAP.get("I"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkTableNotPermutation() {
+        perm = new Permutation(new int[] {0, 0, 1}, new Alphabet("ABC"));
+    }
+
+    @Test
+    public void checkAlgebra() {
+        Permutation rotorI = new Permutation(NAVALA.get("I"), UPPER);
+        Permutation rotorII = new Permutation(NAVALA.get("II"), UPPER);
+        Permutation both = rotorI.compose(rotorII);
+        Permutation identity = rotorI.compose(rotorI.inverse());
+        for (int p = 0; p < UPPER.size(); p += 1) {
+            assertEquals(rotorII.permute(rotorI.permute(p)), both.permute(p));
+            assertEquals(rotorI.invert(rotorII.invert(p)), both.invert(p));
+            assertEquals(p, identity.permute(p));
+            assertEquals(rotorI.permute(rotorI.permute(rotorI.permute(p))),
+                         rotorI.power(3).permute(p));
+            assertEquals(rotorI.invert(p), rotorI.power(-1).permute(p));
+            assertEquals(rotorI.wrap(rotorI.permute(p + 5) - 5),
+                         rotorI.shifted(5).permute(p));
+        }
+        assertArrayEquals(new int[] {10, 4, 4, 3, 2, 2, 1},
+                          rotorI.cycleType());
+        assertEquals("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ)",
+                     rotorI.toString());
+        assertEquals(7, rotorI.cycles().length);
+    }
+
 }
@@ -0,0 +1,175 @@
+package enigma;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers the plugboard of a message whose rotor order and start
+ *  settings are known (for example, from a RotorSearch) by hill climbing
+ *  over plug swaps, scoring trial decryptions with an NgramModel.
+ *
+ *  Since the plugboard does not affect stepping, the scrambler (the
+ *  substitution performed by the rotors alone) at each position of the
+ *  message is computed once.  A trial decryption under plugboard P is then
+ *  P(S_i(P(c_i))) at each position i, and a swap changes at most four
+ *  entries of P in place.
+ *  @author Daniel del Carpio
+ */
+class PlugboardSolver {
+
+    /** A solver for the first LENGTH alphabet indices of CIPHERTEXT, which
+     *  was produced by MACHINE in its current rotor order and settings
+     *  with some unknown plugboard.  MACHINE itself is not changed.
+     *  Decryptions are scored by MODEL. */
+    PlugboardSolver(Machine machine, int[] ciphertext, int length,
+                    NgramModel model) {
+        int n = model.size();
+        if (length < 3) {
+            throw error("ciphertext too short to score");
+        }
+        _size = n;
+        _length = length;
+        _model = model;
+        _ciphertext = ciphertext.clone();
+        _scramblers = new int[length * n];
+        Machine m = machine.copy();
+        int[] table = new int[n];
+        for (int i = 0; i < length; i += 1) {
+            m.nextTable(table, false);
+            System.arraycopy(table, 0, _scramblers, i * n, n);
+        }
+    }
+
+    /** A plugboard and the score of the decryption it gives. */
+    static final class Result {
+
+        /** A result for plugboard PLUGS (an involution on alphabet
+         *  indices) whose decryption scored SCORE. */
+        Result(int[] plugs, double score) {
+            _plugs = plugs;
+            _score = score;
+        }
+
+        /** Return my plugboard as a table: element #i is the index that
+         *  index I is plugged to. */
+        int[] plugs() {
+            return _plugs.clone();
+        }
+
+        /** Return the trigram score of my decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Return my plugboard in cycle notation over ALPHA, as accepted by
+         *  Permutation and in settings lines. */
+        String cycles(Alphabet alpha) {
+            return new Permutation(_plugs, alpha).toString();
+        }
+
+        /** My plugboard. */
+        private final int[] _plugs;
+        /** My score. */
+        private final double _score;
+    }
+
+    /** Return the best plugboard with at most MAXPAIRS plugs found by
+     *  RESTARTS independent hill climbs, run in parallel on the common
+     *  ForkJoin pool.  Restart #k starts from a random plugboard drawn
+     *  with seed SEED + k, so results are reproducible. */
+    Result solve(int restarts, int maxPairs, long seed) {
+        return IntStream.range(0, restarts).parallel()
+            .mapToObj(k -> climb(new Random(seed + k), maxPairs))
+            .max(Comparator.comparingDouble(Result::score))
+            .orElseThrow(() -> error("no restarts requested"));
+    }
+
+    /** Return the result of one hill climb from a random plugboard of at
+     *  most MAXPAIRS plugs drawn from RANDOM.  The climb maximizes bigram
+     *  score first and then trigram score, each until no single swap
+     *  improves it. */
+    private Result climb(Random random, int maxPairs) {
+        int n = _size;
+        int[] plugs = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            plugs[i] = i;
+        }
+        int pairs = 0;
+        for (int k = random.nextInt(maxPairs + 1); k > 0; k -= 1) {
+            int a = random.nextInt(n), b = random.nextInt(n);
+            if (plugs[a] == a && plugs[b] == b && a != b) {
+                Machine.swapPlugs(plugs, a, b);
+                pairs += 1;
+            }
+        }
+        int[] plain = new int[_length];
+        boolean trigrams = false;
+        decrypt(plugs, plain);
+        float score = _model.bigramScore(plain, _length);
+        while (true) {
+            boolean improved = false;
+            for (int a = 0; a < n; a += 1) {
+                for (int b = a + 1; b < n; b += 1) {
+                    int pa = plugs[a], pb = plugs[b];
+                    int change = pa == b ? -1
+                        : 1 - (pa != a ? 1 : 0) - (pb != b ? 1 : 0);
+                    if (pairs + change > maxPairs) {
+                        continue;
+                    }
+                    Machine.swapPlugs(plugs, a, b);
+                    decrypt(plugs, plain);
+                    float trial = trigrams
+                        ? _model.trigramScore(plain, _length)
+                        : _model.bigramScore(plain, _length);
+                    if (trial > score) {
+                        score = trial;
+                        pairs += change;
+                        improved = true;
+                    } else {
+                        plugs[pa] = a;
+                        plugs[pb] = b;
+                        plugs[a] = pa;
+                        plugs[b] = pb;
+                    }
+                }
+            }
+            if (!improved) {
+                if (trigrams) {
+                    break;
+                }
+                trigrams = true;
+                decrypt(plugs, plain);
+                score = _model.trigramScore(plain, _length);
+            }
+        }
+        return new Result(plugs, score);
+    }
+
+    /** Store in PLAIN the decryption of my ciphertext under plugboard
+     *  PLUGS. */
+    private void decrypt(int[] plugs, int[] plain) {
+        int[] scramblers = _scramblers, cipher = _ciphertext;
+        int n = _size;
+        for (int i = 0, row = 0; i < _length; i += 1, row += n) {
+            plain[i] = plugs[scramblers[row + plugs[cipher[i]]]];
+        }
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of ciphertext characters used. */
+    private final int _length;
+
+    /** Model used to score decryptions. */
+    private final NgramModel _model;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _ciphertext;
+
+    /** _scramblers[i * N + c] is the rotors' substitution of index C at
+     *  position I of the message, where N is the alphabet size. */
+    private final int[] _scramblers;
+}
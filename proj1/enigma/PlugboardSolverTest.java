@@ -0,0 +1,91 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PlugboardSolver and NgramModel
+ *  classes.
+ *  @author Daniel del Carpio
+ */
+public class PlugboardSolverTest {
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Training text for the n-gram model, and plaintext of the test
+     *  message. */
+    private static final String TEXT =
+        "It was the best of times, it was the worst of times, it was the "
+        + "age of wisdom, it was the age of foolishness, it was the epoch "
+        + "of belief, it was the epoch of incredulity, it was the season "
+        + "of Light, it was the season of Darkness, it was the spring of "
+        + "hope, it was the winter of despair, we had everything before "
+        + "us, we had nothing before us, we were all going direct to "
+        + "Heaven, we were all going direct the other way; in short, the "
+        + "period was so far like the present period, that some of its "
+        + "noisiest authorities insisted on its being received, for good "
+        + "or for evil, in the superlative degree of comparison only.";
+
+    /** Return a machine holding rotors I, II, III and reflector B, set to
+     *  B I II III at AXL with plugboard PLUGS. */
+    private static Machine machine(String plugs) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new MovingRotor("I",
+                new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        rotors.add(new MovingRotor("II",
+                new Permutation(NAVALA.get("II"), UPPER), "E"));
+        rotors.add(new MovingRotor("III",
+                new Permutation(NAVALA.get("III"), UPPER), "V"));
+        rotors.add(new Reflector("B",
+                new Permutation(NAVALA.get("B"), UPPER)));
+        Machine mach = new Machine(UPPER, 4, 3, rotors);
+        mach.insertRotors(new String[] { "B", "I", "II", "III" });
+        mach.setRotors("AXL");
+        mach.setPlugboard(new Permutation(plugs, UPPER));
+        return mach;
+    }
+
+    @Test
+    public void checkSolve() {
+        String plugs = "(AM) (FI) (NV) (PS) (TU)";
+        StringBuilder plain = new StringBuilder();
+        for (char c : TEXT.toUpperCase().toCharArray()) {
+            if (UPPER.contains(c)) {
+                plain.append(c);
+            }
+        }
+        String cipher = machine(plugs).convert(plain.toString());
+        int[] ciphertext = new int[cipher.length()];
+        for (int i = 0; i < ciphertext.length; i += 1) {
+            ciphertext[i] = UPPER.toInt(cipher.charAt(i));
+        }
+        NgramModel model = NgramModel.train(UPPER, new StringReader(TEXT));
+        PlugboardSolver solver = new PlugboardSolver(machine(""), ciphertext,
+                                                     ciphertext.length,
+                                                     model);
+        PlugboardSolver.Result result = solver.solve(8, 10, 0);
+        assertEquals(plugs, result.cycles(UPPER));
+        int[] table = result.plugs();
+        assertEquals(UPPER.toInt('M'), table[UPPER.toInt('A')]);
+        assertEquals(UPPER.toInt('B'), table[UPPER.toInt('B')]);
+    }
+
+    @Test
+    public void checkModel() {
+        NgramModel model = NgramModel.train(UPPER, new StringReader(TEXT));
+        assertEquals(UPPER.size(), model.size());
+        int[] common = { 19, 7, 4 }, rare = { 16, 25, 23 };
+        assertTrue(model.bigramScore(common, 3)
+                   > model.bigramScore(rare, 3));
+        assertTrue(model.trigramScore(common, 3)
+                   > model.trigramScore(rare, 3));
+    }
+}
@@ -13,6 +13,11 @@ class Reflector extends FixedRotor {
         super(name, perm);
     }
 
+    /** A reflector with the given WIRING. */
+    Reflector(Wiring wiring) {
+        super(wiring);
+    }
+
     /** Returns true if the rotor is a reflector. */
     boolean reflecting() {
         return true;
@@ -0,0 +1,85 @@
+package enigma;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded queue for exactly one producer thread and one consumer
+ *  thread.  Items are held in a fixed array indexed by two counters, each
+ *  written by one side only, so no locks are needed.  A side that must
+ *  wait spins briefly and then parks for short intervals, which suits
+ *  both idle cores and a single shared one.
+ *  @param <T> the type of the items.
+ *  @author Daniel del Carpio
+ */
+final class RingBuffer<T> {
+
+    /** A ring holding at most CAPACITY items, which must be a power of
+     *  two. */
+    RingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw error("ring capacity must be a power of two");
+        }
+        _items = new Object[capacity];
+        _mask = capacity - 1;
+    }
+
+    /** Add ITEM, waiting while the ring is full.  Called by the producer
+     *  only. */
+    void put(T item) {
+        long tail = _tail;
+        for (int k = 0; tail - _head == _items.length; k += 1) {
+            pause(k);
+        }
+        _items[(int) tail & _mask] = item;
+        _tail = tail + 1;
+    }
+
+    /** Remove and return the oldest item, waiting while the ring is empty.
+     *  Called by the consumer only. */
+    @SuppressWarnings("unchecked")
+    T take() {
+        long head = _head;
+        for (int k = 0; _tail == head; k += 1) {
+            pause(k);
+        }
+        int index = (int) head & _mask;
+        T item = (T) _items[index];
+        _items[index] = null;
+        _head = head + 1;
+        return item;
+    }
+
+    /** Wait a little, for the Kth time in a row. */
+    private static void pause(int k) {
+        if (k < SPINS) {
+            Thread.onSpinWait();
+        } else if (k < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /** Number of busy-wait iterations before yielding. */
+    private static final int SPINS = 64;
+
+    /** Number of yields before parking. */
+    private static final int YIELDS = 16;
+
+    /** Length in nanoseconds of each park. */
+    private static final long PARK_NANOS = 20_000;
+
+    /** The items: item #k (counting from 0 since creation) is in
+     *  _items[k & _mask]. */
+    private final Object[] _items;
+
+    /** Capacity - 1. */
+    private final int _mask;
+
+    /** Number of items ever taken.  Written by the consumer only. */
+    private volatile long _head;
+
+    /** Number of items ever put.  Written by the producer only. */
+    private volatile long _tail;
+}
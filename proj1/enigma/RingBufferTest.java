@@ -0,0 +1,73 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the RingBuffer class.
+ *  @author Daniel del Carpio
+ */
+public class RingBufferTest {
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void checkPutTake() {
+        RingBuffer<String> ring = new RingBuffer<>(4);
+        ring.put("a");
+        ring.put("b");
+        assertEquals("a", ring.take());
+        ring.put("c");
+        ring.put("d");
+        ring.put("e");
+        assertEquals("b", ring.take());
+        assertEquals("c", ring.take());
+        assertEquals("d", ring.take());
+        assertEquals("e", ring.take());
+    }
+
+    @Test
+    public void checkWraparound() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        int next = 0;
+        for (int i = 0; i < 100; i += 1) {
+            ring.put(3 * i);
+            ring.put(3 * i + 1);
+            ring.put(3 * i + 2);
+            for (int k = 0; k < 3; k += 1) {
+                assertEquals(next, (int) ring.take());
+                next += 1;
+            }
+        }
+        for (int i = 0; i < 4; i += 1) {
+            ring.put(i);
+        }
+        for (int i = 0; i < 4; i += 1) {
+            assertEquals(i, (int) ring.take());
+        }
+    }
+
+    @Test
+    public void checkTwoThreads() throws InterruptedException {
+        RingBuffer<Integer> ring = new RingBuffer<>(8);
+        int count = 100000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i += 1) {
+                ring.put(i);
+            }
+        });
+        producer.start();
+        for (int i = 0; i < count; i += 1) {
+            assertEquals(i, (int) ring.take());
+        }
+        producer.join();
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkCapacity() {
+        new RingBuffer<String>(6);
+    }
+}
@@ -2,36 +2,48 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  A rotor is
+ *  an immutable Wiring plus a setting of its own; Machines keep their own
+ *  settings and use only the wiring, so rotors may be shared freely among
+ *  them.
  *  @author Daniel Del Carpio
  */
 class Rotor {
 
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
-        _name = name;
-        _permutation = perm;
+        this(new Wiring(name, perm, ""));
+    }
+
+    /** A rotor with the given WIRING, initially at setting 0. */
+    Rotor(Wiring wiring) {
+        _wiring = wiring;
         _setting = 0;
     }
 
     /** Return my name. */
     String name() {
-        return _name;
+        return _wiring.name();
     }
 
     /** Return my alphabet. */
     Alphabet alphabet() {
-        return _permutation.alphabet();
+        return _wiring.permutation().alphabet();
     }
 
     /** Return my permutation. */
     Permutation permutation() {
-        return _permutation;
+        return _wiring.permutation();
+    }
+
+    /** Return my wiring. */
+    Wiring wiring() {
+        return _wiring;
     }
 
     /** Return the size of my alphabet. */
     int size() {
-        return _permutation.size();
+        return _wiring.size();
     }
 
     /** Return true iff I have a ratchet and can move. */
@@ -51,30 +63,28 @@ class Rotor {
 
     /** Set setting() to POSN.  */
     void set(int posn) {
-        _setting = posn;
+        if (posn >= 0 && posn < size()) {
+            _setting = posn;
+        } else {
+            _setting = permutation().wrap(posn);
+        }
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        _setting = cposn - 'A';
+        _setting = alphabet().toInt(cposn);
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int in = _permutation.wrap(p + _setting);
-        int out = _permutation.permute(in);
-        int result = _permutation.wrap(out - _setting);
-        return result;
+        return _wiring.forwardTable(_setting)[p];
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int in = _permutation.wrap(e + _setting);
-        int out = _permutation.invert(in);
-        int result = _permutation.wrap(out - _setting);
-        return result;
+        return _wiring.backwardTable(_setting)[e];
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -83,10 +93,11 @@ class Rotor {
         return false;
     }
 
-    /** Returns integer array of ASCII representation of characters in notches
-     *  Overridden in MovingRotor. */
-    int[] getNotchesArr() {
-        return null;
+    /** Returns an array whose element #S is true iff setting S is one of
+     *  my notches, or null if I have no notches.  The array is shared and
+     *  must not be modified. */
+    boolean[] notchMap() {
+        return _wiring.notchMap();
     }
 
     /** Advance me one position, if possible. By default, does nothing. */
@@ -95,14 +106,12 @@ class Rotor {
 
     @Override
     public String toString() {
-        return "Rotor " + _name;
+        return "Rotor " + name();
     }
 
-    /** My name. */
-    private final String _name;
-
-    /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
+    /** My wiring, including the permutation implemented by this rotor in
+     *  its 0 position. */
+    private final Wiring _wiring;
 
     /** Setting of rotor. */
     private int _setting;
@@ -0,0 +1,113 @@
+package enigma;
+
+import java.util.Collection;
+
+/** The rotors available to a machine, indexed by name.  Names are matched
+ *  ignoring case, through an open-addressing hash table over their
+ *  upper-cased characters, so that a rotor may be found by a name that
+ *  is a String or a word of a SettingsLine without allocating anything.
+ *  If several rotors have the same name, the first is found.
+ *  @author Daniel del Carpio
+ */
+final class RotorRegistry {
+
+    /** A registry of ROTORS, in iteration order. */
+    RotorRegistry(Collection<Rotor> rotors) {
+        _rotors = rotors.toArray(new Rotor[0]);
+        int capacity = Integer.highestOneBit(2 * _rotors.length + 1) << 1;
+        _table = new int[capacity];
+        for (int r = 0; r < _rotors.length; r += 1) {
+            String name = _rotors[r].name();
+            int h = hash(name) & (capacity - 1);
+            while (_table[h] != 0) {
+                if (equal(_rotors[_table[h] - 1].name(), name)) {
+                    break;
+                }
+                h = (h + 1) & (capacity - 1);
+            }
+            if (_table[h] == 0) {
+                _table[h] = r + 1;
+            }
+        }
+    }
+
+    /** Return the number of rotors I hold. */
+    int size() {
+        return _rotors.length;
+    }
+
+    /** Return rotor #R, in the order given to my constructor. */
+    Rotor get(int r) {
+        return _rotors[r];
+    }
+
+    /** Return the rotor named NAME, ignoring case, or null if there is
+     *  none. */
+    Rotor find(String name) {
+        int mask = _table.length - 1;
+        for (int h = hash(name) & mask; _table[h] != 0; h = (h + 1) & mask) {
+            Rotor r = _rotors[_table[h] - 1];
+            if (equal(r.name(), name)) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /** Return the rotor named by word #K of LINE, ignoring case, or null
+     *  if there is none. */
+    Rotor find(SettingsLine line, int k) {
+        int length = line.wordLength(k);
+        int h = 0;
+        for (int i = 0; i < length; i += 1) {
+            h = HASH_MULTIPLIER * h + line.charAt(k, i);
+        }
+        int mask = _table.length - 1;
+        for (h = spread(h) & mask; _table[h] != 0; h = (h + 1) & mask) {
+            Rotor r = _rotors[_table[h] - 1];
+            if (line.wordEquals(k, r.name())) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /** Return the hash of NAME, upper-cased. */
+    private static int hash(String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i += 1) {
+            h = HASH_MULTIPLIER * h + InputTokenizer.upcase(name.charAt(i));
+        }
+        return spread(h);
+    }
+
+    /** Return H with its high bits mixed into its low bits. */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /** Return true iff A and B are equal, ignoring case. */
+    private static boolean equal(String a, String b) {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < a.length(); i += 1) {
+            if (InputTokenizer.upcase(a.charAt(i))
+                != InputTokenizer.upcase(b.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Multiplier of the polynomial name hash, as for String.hashCode. */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /** The rotors, in the order given. */
+    private final Rotor[] _rotors;
+
+    /** Open-addressing table: a non-zero _table[h] is 1 + the index in
+     *  _rotors of a rotor whose name hashes to h or probes past it.  Its
+     *  size is a power of two, at least twice the number of rotors. */
+    private final int[] _table;
+}
@@ -0,0 +1,288 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only search for the rotor order and start settings of a
+ *  message.  Every rotor order allowed by a configuration is tried at
+ *  every start setting with an identity plugboard; each trial decrypts a
+ *  prefix of the ciphertext and is scored by its index of coincidence.
+ *  The search space is divided among the threads of a ForkJoinPool, which
+ *  balances it by work stealing.
+ *  @author Daniel del Carpio
+ */
+class RotorSearch {
+
+    /** A search over the rotor orders of machines with NUMROTORS slots and
+     *  NUMPAWLS pawls that can be assembled from ALLROTORS, whose alphabet
+     *  is ALPHA.  Slot 0 holds a Reflector, the other non-moving slots
+     *  hold non-rotating rotors, and the last NUMPAWLS slots hold rotating
+     *  ones. */
+    RotorSearch(Alphabet alpha, int numRotors, int numPawls,
+                Collection<Rotor> allRotors) {
+        _template = new Machine(alpha, numRotors, numPawls, allRotors);
+        _alphabet = alpha;
+        _orders = orders(numRotors, numPawls, allRotors);
+        long settings = 1;
+        for (int i = 1; i < numRotors; i += 1) {
+            settings *= alpha.size();
+        }
+        _settingsPerOrder = settings;
+    }
+
+    /** Return every rotor order, reflector first, for a machine with
+     *  NUMROTORS slots and NUMPAWLS pawls that can be assembled from
+     *  ALLROTORS: slot 0 holds a Reflector, the other non-moving slots hold
+     *  non-rotating rotors, and the last NUMPAWLS slots hold rotating ones,
+     *  with no rotor used twice. */
+    static ArrayList<String[]> orders(int numRotors, int numPawls,
+                                      Collection<Rotor> allRotors) {
+        ArrayList<String> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(), moving = new ArrayList<>();
+        for (Rotor r : allRotors) {
+            if (r instanceof Reflector) {
+                reflectors.add(r.name());
+            } else if (r.rotates()) {
+                moving.add(r.name());
+            } else {
+                fixed.add(r.name());
+            }
+        }
+        ArrayList<String[]> result = new ArrayList<>();
+        String[] order = new String[numRotors];
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            addOrders(result, order, 1, numRotors - numPawls, fixed, moving);
+        }
+        if (result.isEmpty()) {
+            throw error("no rotor order fits %d slots and %d pawls",
+                        numRotors, numPawls);
+        }
+        return result;
+    }
+
+    /** Add to RESULT every completion of ORDER from slot K on, taking
+     *  slots before FIRSTMOVING from FIXED and the rest from MOVING, with
+     *  no rotor used twice. */
+    private static void addOrders(List<String[]> result, String[] order,
+                                  int k, int firstMoving,
+                                  List<String> fixed, List<String> moving) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        for (String name : k < firstMoving ? fixed : moving) {
+            boolean used = false;
+            for (int i = 1; i < k; i += 1) {
+                used |= order[i].equals(name);
+            }
+            if (!used) {
+                order[k] = name;
+                addOrders(result, order, k + 1, firstMoving, fixed, moving);
+            }
+        }
+    }
+
+    /** Return the number of rotor orders I search. */
+    int numOrders() {
+        return _orders.size();
+    }
+
+    /** A possible setting of the machine and its score. */
+    static final class Candidate {
+
+        /** A candidate with rotors named ROTORS at SETTING, whose trial
+         *  decryption scored SCORE. */
+        Candidate(String[] rotors, String setting, double score) {
+            _rotors = rotors;
+            _setting = setting;
+            _score = score;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor settings, as for Machine.setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the index of coincidence of my trial decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Returns my settings line, in the form accepted by Main. */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _setting;
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** My rotor settings. */
+        private final String _setting;
+        /** My score. */
+        private final double _score;
+    }
+
+    /** Return the TOPN best-scoring candidates, best first, for the
+     *  message whose first LENGTH characters, as alphabet indices, are
+     *  CIPHERTEXT[0 .. LENGTH-1].  Runs on POOL. */
+    List<Candidate> search(int[] ciphertext, int length, int topN,
+                           ForkJoinPool pool) {
+        if (length < 2) {
+            throw error("ciphertext too short to score");
+        }
+        int[] prefix = Arrays.copyOf(ciphertext, length);
+        long total = _settingsPerOrder * _orders.size();
+        PriorityQueue<Candidate> best =
+            pool.invoke(new Part(prefix, topN, 0, total));
+        ArrayList<Candidate> result = new ArrayList<>(best);
+        result.sort((a, b) -> Double.compare(b.score(), a.score()));
+        return Collections.unmodifiableList(result);
+    }
+
+    /** As for search(CIPHERTEXT, LENGTH, TOPN, POOL), running on the
+     *  common pool. */
+    List<Candidate> search(int[] ciphertext, int length, int topN) {
+        return search(ciphertext, length, topN, ForkJoinPool.commonPool());
+    }
+
+    /** Number of trials below which a Part is not split further. */
+    static final int TRIALS_PER_TASK = 1 << 12;
+
+    /** A task that tries a range of the search space, numbered as
+     *  order * settings per order + settings (in mixed radix, slot 1
+     *  most significant), and returns its best candidates as a min-heap
+     *  by score. */
+    private class Part extends RecursiveTask<PriorityQueue<Candidate>> {
+
+        /** A task that scores trials LO to HI-1 against PREFIX, keeping the
+         *  best TOPN. */
+        Part(int[] prefix, int topN, long lo, long hi) {
+            _prefix = prefix;
+            _topN = topN;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected PriorityQueue<Candidate> compute() {
+            if (_hi - _lo > TRIALS_PER_TASK) {
+                long mid = (_lo + _hi) >>> 1;
+                Part right = new Part(_prefix, _topN, mid, _hi);
+                right.fork();
+                PriorityQueue<Candidate> result =
+                    new Part(_prefix, _topN, _lo, mid).compute();
+                for (Candidate c : right.join()) {
+                    offer(result, c.score(), c);
+                }
+                return result;
+            }
+            PriorityQueue<Candidate> result = newHeap();
+            int n = _alphabet.size();
+            int[] settings = new int[_template.numRotors() - 1];
+            int[] plain = new int[_prefix.length];
+            int[] counts = new int[n];
+            Machine machine = null;
+            int order = -1;
+            for (long trial = _lo; trial < _hi; trial += 1) {
+                if (machine == null || trial % _settingsPerOrder == 0) {
+                    order = (int) (trial / _settingsPerOrder);
+                    machine = _template.copy();
+                    machine.insertRotors(_orders.get(order));
+                    machine.setPlugboard(new Permutation("", _alphabet));
+                    machine.setCompiled(true);
+                    long rest = trial % _settingsPerOrder;
+                    for (int i = settings.length - 1; i >= 0; i -= 1) {
+                        settings[i] = (int) (rest % n);
+                        rest /= n;
+                    }
+                } else {
+                    int i = settings.length - 1;
+                    while (settings[i] == n - 1) {
+                        settings[i] = 0;
+                        i -= 1;
+                    }
+                    settings[i] += 1;
+                }
+                machine.setRotors(settings);
+                machine.convert(_prefix, 0, plain, 0, plain.length);
+                double score = coincidence(plain, counts);
+                if (result.size() < _topN
+                    || score > result.peek().score()) {
+                    StringBuilder setting = new StringBuilder();
+                    for (int s : settings) {
+                        setting.append(_alphabet.toChar(s));
+                    }
+                    offer(result, score,
+                          new Candidate(_orders.get(order),
+                                        setting.toString(), score));
+                }
+            }
+            return result;
+        }
+
+        /** Add C, whose score is SCORE, to HEAP if it is among the best
+         *  _topN seen. */
+        private void offer(PriorityQueue<Candidate> heap, double score,
+                           Candidate c) {
+            if (heap.size() < _topN) {
+                heap.add(c);
+            } else if (score > heap.peek().score()) {
+                heap.poll();
+                heap.add(c);
+            }
+        }
+
+        /** Return a new, empty heap ordered by increasing score. */
+        private PriorityQueue<Candidate> newHeap() {
+            return new PriorityQueue<>(
+                (a, b) -> Double.compare(a.score(), b.score()));
+        }
+
+        /** The ciphertext prefix. */
+        private final int[] _prefix;
+        /** Number of candidates to keep. */
+        private final int _topN;
+        /** Range of trials covered by this task. */
+        private final long _lo, _hi;
+    }
+
+    /** Return the index of coincidence of TEXT, using COUNTS (one element
+     *  per alphabet character) as scratch space. */
+    static double coincidence(int[] text, int[] counts) {
+        Arrays.fill(counts, 0);
+        for (int c : text) {
+            counts[c] += 1;
+        }
+        long sum = 0;
+        for (int k : counts) {
+            sum += (long) k * (k - 1);
+        }
+        return (double) sum / ((double) text.length * (text.length - 1));
+    }
+
+    /** Alphabet of the machines searched. */
+    private final Alphabet _alphabet;
+
+    /** Unassembled machine from which each trial's machine is copied. */
+    private final Machine _template;
+
+    /** All rotor orders searched, reflector first. */
+    private final ArrayList<String[]> _orders;
+
+    /** Number of distinct start settings for each rotor order. */
+    private final long _settingsPerOrder;
+}
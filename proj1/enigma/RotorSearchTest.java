@@ -0,0 +1,88 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RotorSearch class.
+ *  @author Daniel del Carpio
+ */
+public class RotorSearchTest {
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Plaintext of the test message. */
+    private static final String PLAIN =
+        "ITWASTHEBESTOFTIMESITWASTHEWORSTOFTIMESITWASTHEAGEOFWISDOM"
+        + "ITWASTHEAGEOFFOOLISHNESSITWASTHEEPOCHOFBELIEFITWASTHEEPOCH"
+        + "OFINCREDULITYITWASTHESEASONOFLIGHTITWASTHESEASONOFDARKNESS";
+
+    /** Return rotors I, II, III and reflector B over UPPER. */
+    private static ArrayList<Rotor> rotors() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new MovingRotor("I",
+                new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        rotors.add(new MovingRotor("II",
+                new Permutation(NAVALA.get("II"), UPPER), "E"));
+        rotors.add(new MovingRotor("III",
+                new Permutation(NAVALA.get("III"), UPPER), "V"));
+        rotors.add(new Reflector("B",
+                new Permutation(NAVALA.get("B"), UPPER)));
+        return rotors;
+    }
+
+    /** Return the indices of the characters of S in UPPER. */
+    private static int[] indices(String s) {
+        int[] result = new int[s.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = UPPER.toInt(s.charAt(i));
+        }
+        return result;
+    }
+
+    @Test
+    public void checkSearch() {
+        Machine mach = new Machine(UPPER, 3, 2, rotors());
+        mach.insertRotors(new String[] { "B", "III", "I" });
+        mach.setRotors("GT");
+        mach.setPlugboard(new Permutation("", UPPER));
+        int[] ciphertext = indices(mach.convert(PLAIN));
+        RotorSearch search = new RotorSearch(UPPER, 3, 2, rotors());
+        assertEquals(6, search.numOrders());
+        List<RotorSearch.Candidate> best =
+            search.search(ciphertext, ciphertext.length, 5);
+        assertEquals(5, best.size());
+        boolean found = false;
+        for (int i = 0; i < best.size(); i += 1) {
+            found |= best.get(i).toString().equals("* B III I GT");
+            if (i > 0) {
+                assertTrue(best.get(i - 1).score() >= best.get(i).score());
+            }
+        }
+        assertTrue(found);
+        assertEquals(RotorSearch.coincidence(indices(PLAIN), new int[26]),
+                     best.get(0).score(), 1e-9);
+    }
+
+    @Test
+    public void checkCoincidence() {
+        int[] counts = new int[UPPER.size()];
+        assertEquals(1.0, RotorSearch.coincidence(indices("AAAA"), counts),
+                     1e-9);
+        assertEquals(0.0, RotorSearch.coincidence(indices("ABCD"), counts),
+                     1e-9);
+        assertEquals(1.0 / 3, RotorSearch.coincidence(indices("ABAB"),
+                                                      counts), 1e-9);
+        assertEquals(4.0 / 30,
+                     RotorSearch.coincidence(indices("SEESAW"), counts),
+                     1e-9);
+    }
+}
@@ -0,0 +1,243 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A settings line ("* B BETA III IV I AXLE (YF) (ZH)") held in reusable
+ *  buffers and split into words, so that a machine can be set up from it
+ *  without regular expressions or a String per word.  Characters are
+ *  upper-cased as they are added.  A '*' at the start of the line is a
+ *  word of its own, whether or not a blank follows it.
+ *  @author Daniel del Carpio
+ */
+final class SettingsLine {
+
+    /** Empty the line. */
+    void clear() {
+        _length = 0;
+        _words = 0;
+    }
+
+    /** Add C to the end of the line. */
+    void append(char c) {
+        if (_length == _chars.length) {
+            char[] chars = new char[2 * _length];
+            System.arraycopy(_chars, 0, chars, 0, _length);
+            _chars = chars;
+        }
+        _chars[_length] = InputTokenizer.upcase(c);
+        _length += 1;
+    }
+
+    /** Add the characters CHARS[START .. END-1] to the end of the line. */
+    void append(char[] chars, int start, int end) {
+        for (int i = start; i < end; i += 1) {
+            append(chars[i]);
+        }
+    }
+
+    /** Split the line into words, once all of it has been appended. */
+    void finish() {
+        _words = 0;
+        int i = 0;
+        while (i < _length) {
+            char c = _chars[i];
+            if (Character.isWhitespace(c)) {
+                i += 1;
+                continue;
+            }
+            int start = i;
+            if (c == '*' && _words == 0) {
+                i += 1;
+            } else {
+                while (i < _length && !Character.isWhitespace(_chars[i])) {
+                    i += 1;
+                }
+            }
+            if (_words == _starts.length) {
+                int[] starts = new int[2 * _words], ends = new int[2 * _words];
+                System.arraycopy(_starts, 0, starts, 0, _words);
+                System.arraycopy(_ends, 0, ends, 0, _words);
+                _starts = starts;
+                _ends = ends;
+            }
+            _starts[_words] = start;
+            _ends[_words] = i;
+            _words += 1;
+        }
+    }
+
+    /** Set the line to LINE and split it into words. */
+    void parse(CharSequence line) {
+        clear();
+        for (int i = 0; i < line.length(); i += 1) {
+            append(line.charAt(i));
+        }
+        finish();
+    }
+
+    /** Return the number of words in the line. */
+    int words() {
+        return _words;
+    }
+
+    /** Return the length of word #K. */
+    int wordLength(int k) {
+        return _ends[k] - _starts[k];
+    }
+
+    /** Return character #I of word #K. */
+    char charAt(int k, int i) {
+        return _chars[_starts[k] + i];
+    }
+
+    /** Return true iff word #K is NAME, ignoring case. */
+    boolean wordEquals(int k, String name) {
+        int length = wordLength(k);
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i += 1) {
+            if (charAt(k, i) != InputTokenizer.upcase(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff words #J and #K are the same. */
+    boolean wordsEqual(int j, int k) {
+        int length = wordLength(j);
+        if (length != wordLength(k)) {
+            return false;
+        }
+        for (int i = 0; i < length; i += 1) {
+            if (charAt(j, i) != charAt(k, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return word #K as a new String. */
+    String word(int k) {
+        return new String(_chars, _starts[k], wordLength(k));
+    }
+
+    /** Return the line from the start of word #K to its end, or an empty
+     *  sequence if there is no word #K.  The result is a view that is
+     *  valid only until the line next changes. */
+    CharSequence rest(int k) {
+        _rest._start = k < _words ? _starts[k] : _length;
+        return _rest;
+    }
+
+    /** The characters of the line from some point to its end. */
+    private final class Rest implements CharSequence {
+        @Override
+        public int length() {
+            return _length - _start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return _chars[_start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(_chars, _start + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(_chars, _start, length());
+        }
+
+        /** Index in _chars of my first character. */
+        private int _start;
+    }
+
+    /** Return the text of the line from its first word on as a key, for
+     *  looking up maps keyed by settings-line text without copying it.
+     *  The result is a view that is valid only until the line next
+     *  changes, so it must not be stored; store its copy() instead. */
+    Key key() {
+        _key._chars = _chars;
+        _key._start = _words > 0 ? _starts[0] : _length;
+        _key._end = _length;
+        _key._hash = 0;
+        return _key;
+    }
+
+    /** The text of a settings line, as a map key.  Two keys are equal iff
+     *  they hold the same characters. */
+    static final class Key {
+
+        /** A key holding CHARS[START .. END-1]. */
+        private Key(char[] chars, int start, int end) {
+            _chars = chars;
+            _start = start;
+            _end = end;
+        }
+
+        /** Return a key equal to me that does not share my characters. */
+        Key copy() {
+            return new Key(Arrays.copyOfRange(_chars, _start, _end), 0,
+                           _end - _start);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = _hash;
+            if (h == 0) {
+                for (int i = _start; i < _end; i += 1) {
+                    h = 31 * h + _chars[i];
+                }
+                _hash = h;
+            }
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return Arrays.equals(_chars, _start, _end,
+                                 other._chars, other._start, other._end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(_chars, _start, _end - _start);
+        }
+
+        /** My characters are _chars[_start .. _end-1]. */
+        private char[] _chars;
+        /** See _chars. */
+        private int _start, _end;
+        /** My hash code, or 0 if not yet computed. */
+        private int _hash;
+    }
+
+    /** The characters of the line, in _chars[0 .. _length-1]. */
+    private char[] _chars = new char[INITIAL_SIZE];
+    /** See _chars. */
+    private int _length;
+
+    /** Word #k is _chars[_starts[k] .. _ends[k]-1], for k < _words. */
+    private int[] _starts = new int[INITIAL_SIZE],
+        _ends = new int[INITIAL_SIZE];
+    /** See _starts. */
+    private int _words;
+
+    /** The view returned by rest. */
+    private final Rest _rest = new Rest();
+
+    /** The view returned by key. */
+    private final Key _key = new Key(null, 0, 0);
+
+    /** Initial size of the buffers, which grow as needed. */
+    private static final int INITIAL_SIZE = 128;
+}
@@ -0,0 +1,124 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the SettingsLine class.
+ *  @author Daniel del Carpio
+ */
+public class SettingsLineTest {
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a SettingsLine holding LINE. */
+    private static SettingsLine line(String line) {
+        SettingsLine result = new SettingsLine();
+        result.parse(line);
+        return result;
+    }
+
+    @Test
+    public void checkWords() {
+        SettingsLine line = line(" *b  beta iii\tAXLE (yf) ");
+        assertEquals(6, line.words());
+        assertEquals("*", line.word(0));
+        assertEquals("B", line.word(1));
+        assertEquals("BETA", line.word(2));
+        assertEquals("(YF)", line.word(5));
+        assertEquals(4, line.wordLength(4));
+        assertEquals('X', line.charAt(4, 1));
+        assertTrue(line.wordEquals(2, "Beta"));
+        assertFalse(line.wordEquals(2, "BET"));
+        assertFalse(line.wordEquals(3, "II"));
+
+        line = line("* B");
+        assertEquals(2, line.words());
+        assertEquals("*", line.word(0));
+        line = line("   ");
+        assertEquals(0, line.words());
+    }
+
+    @Test
+    public void checkAppend() {
+        SettingsLine line = new SettingsLine();
+        line.append('*');
+        line.append(" b i".toCharArray(), 0, 4);
+        line.finish();
+        assertEquals(3, line.words());
+        assertEquals("I", line.word(2));
+        line.clear();
+        line.append('x');
+        line.finish();
+        assertEquals(1, line.words());
+        assertEquals("X", line.word(0));
+    }
+
+    @Test
+    public void checkGrowth() {
+        StringBuilder text = new StringBuilder("*");
+        for (int i = 0; i < 300; i += 1) {
+            text.append(" w").append(i);
+        }
+        SettingsLine line = line(text.toString());
+        assertEquals(301, line.words());
+        assertEquals("W299", line.word(300));
+        assertEquals(text.toString().toUpperCase(),
+                     line.rest(0).toString());
+    }
+
+    @Test
+    public void checkWordsEqual() {
+        SettingsLine line = line("* B I II I ii");
+        assertTrue(line.wordsEqual(2, 4));
+        assertTrue(line.wordsEqual(3, 5));
+        assertFalse(line.wordsEqual(2, 3));
+        assertFalse(line.wordsEqual(1, 2));
+        assertTrue(line.wordsEqual(1, 1));
+    }
+
+    @Test
+    public void checkRest() {
+        SettingsLine line = line("* B I  II III AAA (AB)");
+        assertEquals("II III AAA (AB)", line.rest(3).toString());
+        assertEquals("(AB)", line.rest(6).toString());
+        assertEquals(0, line.rest(7).length());
+        CharSequence rest = line.rest(2);
+        assertEquals(18, rest.length());
+        assertEquals('I', rest.charAt(0));
+        assertEquals("II", rest.subSequence(3, 5).toString());
+    }
+
+    @Test
+    public void checkKey() {
+        SettingsLine line = line("  * b i ii iii aaa");
+        SettingsLine other = line("* B I II III AAA");
+        assertEquals(line.key(), other.key());
+        assertEquals(line.key().hashCode(), other.key().hashCode());
+        assertEquals("* B I II III AAA", line.key().toString());
+
+        SettingsLine.Key saved = line.key().copy();
+        line.parse("* B I II III AAB");
+        assertNotEquals(saved, line.key());
+        assertEquals(saved, other.key());
+
+        HashMap<SettingsLine.Key, Integer> map = new HashMap<>();
+        map.put(saved, 1);
+        map.put(line.key().copy(), 2);
+        assertEquals(Integer.valueOf(2), map.get(line.key()));
+        line.parse(" *  B I II III AAA");
+        assertNull(map.get(line.key()));
+        line.parse("*b i ii iii aaa");
+        assertNull(map.get(line.key()));
+        line.parse("* b i ii iii aaa");
+        assertEquals(Integer.valueOf(1), map.get(line.key()));
+
+        assertEquals(line("").key(), line("   ").key());
+        assertNotEquals(line("").key(), line("*").key());
+    }
+}
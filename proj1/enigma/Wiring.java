@@ -0,0 +1,131 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The immutable wiring of a rotor: its name, its permutation, its notches
+ *  and its substitution tables for every setting.  A Wiring holds no
+ *  setting of its own, so one Wiring may back any number of Rotors and
+ *  Machines, on any number of threads.  The tables take 8 * N * N bytes
+ *  for an alphabet of N characters (about 72 MB per rotor for N = 3000),
+ *  which bounds the alphabets that are practical.
+ *  @author Daniel del Carpio
+ */
+final class Wiring {
+
+    /** The wiring of a rotor named NAME whose permutation in its 0 setting
+     *  is PERM and whose notches are at the characters in NOTCHES. */
+    Wiring(String name, Permutation perm, String notches) {
+        this(name, perm, notchMap(name, perm, notches));
+    }
+
+    /** The wiring of a rotor named NAME whose permutation in its 0 setting
+     *  is PERM and whose notches are the settings s for which NOTCHMAP[s]
+     *  is true, or which has none if NOTCHMAP is null.  NOTCHMAP is
+     *  copied. */
+    Wiring(String name, Permutation perm, boolean[] notchMap) {
+        if (notchMap != null && notchMap.length != perm.size()) {
+            throw error("notch map of rotor %s does not match alphabet",
+                        name);
+        }
+        _name = name;
+        _permutation = perm;
+        int n = perm.size();
+        _forward = new int[n][];
+        _backward = new int[n][];
+        for (int setting = 0; setting < n; setting += 1) {
+            Permutation shifted = perm.shifted(setting);
+            _forward[setting] = shifted.table();
+            _backward[setting] = shifted.inverse().table();
+        }
+        _notchMap = notchMap == null ? null : notchMap.clone();
+    }
+
+    /** The wiring of a rotor named NAME whose permutation in its 0 setting
+     *  is PERM, whose substitution tables are FORWARD and BACKWARD, as
+     *  returned by forwardTable and backwardTable, and whose notch map is
+     *  NOTCHMAP, as returned by notchMap.  The tables and NOTCHMAP are
+     *  used as they are, not copied or checked against PERM; this is for
+     *  tables that were built by another Wiring, as in ConfigImage. */
+    Wiring(String name, Permutation perm, int[][] forward, int[][] backward,
+           boolean[] notchMap) {
+        int n = perm.size();
+        if (forward.length != n || backward.length != n
+            || notchMap != null && notchMap.length != n) {
+            throw error("tables of rotor %s do not match alphabet", name);
+        }
+        _name = name;
+        _permutation = perm;
+        _forward = forward;
+        _backward = backward;
+        _notchMap = notchMap;
+    }
+
+    /** Return the notch map of the rotor named NAME with permutation PERM
+     *  whose notches are at the characters in NOTCHES, or null if NOTCHES
+     *  is empty. */
+    private static boolean[] notchMap(String name, Permutation perm,
+                                      String notches) {
+        if (notches.isEmpty()) {
+            return null;
+        }
+        boolean[] result = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            char c = notches.charAt(i);
+            if (!perm.alphabet().contains(c)) {
+                throw error("notch '%c' of rotor %s not in alphabet",
+                            c, name);
+            }
+            result[perm.alphabet().toInt(c)] = true;
+        }
+        return result;
+    }
+
+    /** Return my name. */
+    String name() {
+        return _name;
+    }
+
+    /** Return my permutation at setting 0. */
+    Permutation permutation() {
+        return _permutation;
+    }
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _forward.length;
+    }
+
+    /** Return my forward substitution table for SETTING.  The table is
+     *  shared and must not be modified. */
+    int[] forwardTable(int setting) {
+        return _forward[setting];
+    }
+
+    /** Return my backward substitution table for SETTING.  The table is
+     *  shared and must not be modified. */
+    int[] backwardTable(int setting) {
+        return _backward[setting];
+    }
+
+    /** Returns an array whose element #S is true iff setting S is one of
+     *  my notches, or null if I have no notches.  The array is shared and
+     *  must not be modified. */
+    boolean[] notchMap() {
+        return _notchMap;
+    }
+
+    /** My name. */
+    private final String _name;
+
+    /** My permutation at setting 0. */
+    private final Permutation _permutation;
+
+    /** _forward[s][p] is the forward conversion of P at setting S. */
+    private final int[][] _forward;
+
+    /** _backward[s][e] is the backward conversion of E at setting S. */
+    private final int[][] _backward;
+
+    /** _notchMap[s] is true iff S is a notch, or null if I have none. */
+    private final boolean[] _notchMap;
+}